@@ -1,73 +1,177 @@
+import Nand2Tetris.proj6.HackAssembler.AssemblyCache;
 import Nand2Tetris.proj6.HackAssembler.Code;
+import Nand2Tetris.proj6.HackAssembler.ParallelAssembler;
 import Nand2Tetris.proj6.HackAssembler.Parser;
+import Nand2Tetris.proj6.HackAssembler.RomImage;
+import Nand2Tetris.proj6.HackAssembler.RomWriter;
 import Nand2Tetris.proj6.HackAssembler.SymbolTable;
 
 import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 /**
  * Assembler 类：Hack 汇编器的主类，负责将 .asm 文件翻译为 .hack 文件。
  * 整合 Parser、SymbolTable 和 Code 类，完成汇编过程。
- * 实现两次扫描：
- * 1. 第一次扫描：构建符号表，处理 L_COMMAND（标签）。
- * 2. 第二次扫描：翻译 A_COMMAND 和 C_COMMAND，生成二进制代码。
+ * 实现单次扫描：
+ * 边扫描边翻译 A_COMMAND 和 C_COMMAND，L_COMMAND（标签）在出现时加入符号表，
+ * 对标签的前向引用记录在回填表中，待标签出现后回填。
+ * 超大文件可改用 ParallelAssembler 按块并行汇编。
  */
 public class Assembler {
+    // --port 模式下同时处理的连接数上限，以及排队等待处理的连接数上限
+    private static final int MAX_CONNECTIONS = 16;
+    private static final int MAX_PENDING_CONNECTIONS = 50;
+    // 按输出文件的绝对路径分段的锁：同一输出文件的汇编（含缓存恢复）串行执行。
+    // 锁的个数固定，常驻模式下不会随处理过的文件数增长；不同文件偶尔共用一把锁只会多等一会儿
+    private static final Object[] OUTPUT_LOCKS = new Object[64];
+
+    static {
+        for (int i = 0; i < OUTPUT_LOCKS.length; i++) {
+            OUTPUT_LOCKS[i] = new Object();
+        }
+    }
+
     // 用于解析 .asm 文件的 Parser 对象
     private Parser parser;
     // 用于管理符号和地址的 SymbolTable 对象
     private SymbolTable symbolTable;
-    // 用于将 C 指令字段翻译为二进制的 Code 对象
-    private Code code;
-    // 用于写入 .hack 文件的输出流
-    private PrintWriter writer;
+    // 输出文件路径（.hack 或 .rom）
+    private String outputFile;
+    // 是否输出二进制 ROM 镜像（.rom），否则输出文本 .hack 文件
+    private boolean binary;
+    // 是否按块并行汇编（适用于超大的 .asm 文件）
+    private boolean parallel;
 
     /**
-     * 构造函数：初始化 Assembler，创建所需的组件。
+     * 构造函数：初始化 Assembler，创建所需的组件，输出文本 .hack 文件。
      * @param inputFile 输入的 .asm 文件路径
      * @throws IOException 如果文件无法打开或写入时抛出异常
      */
     public Assembler(String inputFile) throws IOException {
+        this(inputFile, false);
+    }
+
+    /**
+     * 构造函数：初始化 Assembler，创建所需的组件。
+     * @param inputFile 输入的 .asm 文件路径
+     * @param binary 为 true 时输出小端序的二进制 ROM 镜像（.rom），否则输出文本 .hack 文件
+     * @throws IOException 如果文件无法打开或写入时抛出异常
+     */
+    public Assembler(String inputFile, boolean binary) throws IOException {
+        this(inputFile, binary, false);
+    }
+
+    /**
+     * 构造函数：初始化 Assembler，创建所需的组件。
+     * @param inputFile 输入的 .asm 文件路径
+     * @param binary 为 true 时输出小端序的二进制 ROM 镜像（.rom），否则输出文本 .hack 文件
+     * @param parallel 为 true 时使用 ParallelAssembler 按块并行汇编，输出与顺序汇编一致
+     * @throws IOException 如果文件无法打开或写入时抛出异常
+     */
+    public Assembler(String inputFile, boolean binary, boolean parallel) throws IOException {
         parser = new Parser(inputFile); // 初始化 Parser，读取输入文件
         symbolTable = new SymbolTable(); // 初始化符号表，包含预定义符号
-        code = new Code(); // 初始化 Code，准备翻译 C 指令
-        // 构造输出文件名：将 .asm 替换为 .hack
-        String outputFile = inputFile.replace(".asm", ".hack");
-        // 使用 BufferedWriter 包装 FileWriter，确保控制换行符
-        writer = new PrintWriter(new BufferedWriter(new FileWriter(outputFile)));
+        this.binary = binary;
+        this.parallel = parallel;
+        outputFile = outputFile(inputFile, binary);
+    }
+
+    /**
+     * 构造输出文件名：将 .asm 替换为 .hack 或 .rom。
+     * @param inputFile 输入的 .asm 文件路径
+     * @param binary 是否输出二进制 ROM 镜像
+     * @return 输出文件路径
+     */
+    public static String outputFile(String inputFile, boolean binary) {
+        return inputFile.replace(".asm", binary ? RomImage.BINARY_EXTENSION : RomImage.TEXT_EXTENSION);
+    }
+
+    /**
+     * 汇编单个文件；指定了缓存时先查缓存，命中则跳过解析，未命中则汇编后存入缓存。
+     * 输出到同一文件的并发调用（常驻模式下的多个请求、清单中重复的输入）按输出路径加锁串行执行，
+     * 避免 RomWriter 的删除后新建和缓存恢复互相干扰。
+     * @param inputFile 输入的 .asm 文件路径
+     * @param binary 是否输出二进制 ROM 镜像
+     * @param parallel 是否按块并行汇编
+     * @param cache 增量汇编缓存；为 null 时不使用缓存
+     * @throws IOException 如果文件处理过程中发生错误
+     */
+    public static void assembleFile(String inputFile, boolean binary, boolean parallel, AssemblyCache cache)
+            throws IOException {
+        Path output = Paths.get(outputFile(inputFile, binary)).toAbsolutePath().normalize();
+        synchronized (OUTPUT_LOCKS[Math.floorMod(output.hashCode(), OUTPUT_LOCKS.length)]) {
+            assembleLocked(inputFile, binary, parallel, cache);
+        }
+    }
+
+    // 辅助方法：assembleFile 在持有输出文件的锁之后的实际工作
+    private static void assembleLocked(String inputFile, boolean binary, boolean parallel, AssemblyCache cache)
+            throws IOException {
+        if (cache == null) {
+            new Assembler(inputFile, binary, parallel).assemble();
+            return;
+        }
+        long start = System.nanoTime();
+        String key = cache.key(inputFile, binary);
+        if (cache.restore(key, outputFile(inputFile, binary), System.nanoTime() - start)) {
+            return;
+        }
+        start = System.nanoTime();
+        new Assembler(inputFile, binary, parallel).assemble();
+        cache.store(key, outputFile(inputFile, binary), System.nanoTime() - start);
     }
 
     /**
-     * 执行汇编过程：完成两次扫描，生成 .hack 文件。
-     * 修复：确保最后一行不以 \n 结尾。
+     * 执行汇编过程：汇编 .asm 文件并写出 .hack 或 .rom 文件。
      * @throws IOException 如果文件读取或写入过程中发生错误
      */
     public void assemble() throws IOException {
-        // 第一次扫描：构建符号表，处理 L_COMMAND（标签）
-        int romAddress = 0; // ROM 地址计数器，记录指令的地址
-        while (parser.hasMoreCommands()) {
-            parser.advance(); // 前进到下一条命令
-            String commandType = parser.commandType();
-            if (commandType == null) {
-                continue; // 如果命令类型为空（可能是 Parser 的 bug），跳过
-            }
-            if (commandType.equals(Parser.L_COMMAND)) {
-                // 遇到 L_COMMAND，将标签添加到符号表
-                String symbol = parser.symbol();
-                symbolTable.addEntry(symbol, romAddress);
-            } else if (commandType.equals(Parser.A_COMMAND) || commandType.equals(Parser.C_COMMAND)) {
-                // 遇到 A_COMMAND 或 C_COMMAND，增加 ROM 地址计数器
-                romAddress++;
+        // RomWriter 负责控制换行符：最后一行不以 \n 结尾
+        try (RomWriter writer = new RomWriter(outputFile, binary)) {
+            if (parallel) {
+                for (int word : new ParallelAssembler(parser.buffer(), parser.getFilePath(), symbolTable).assemble()) {
+                    writer.write(word);
+                }
+            } else {
+                assembleSequential(writer);
             }
-            // L_COMMAND 不占用 ROM 地址，仅用于标记
         }
 
-        // 重置 Parser，准备第二次扫描
-        parser = new Parser(parser.getFilePath());
+        // 关闭 Parser 的输入文件
+        parser.close();
+    }
 
-        // 第二次扫描：翻译 A_COMMAND 和 C_COMMAND，生成二进制代码
-        // 使用 ArrayList 存储所有二进制代码行
-        ArrayList<String> binaryLines = new ArrayList<>();
+    /**
+     * 单次扫描 .asm 文件，将每条指令编码为 16 位整数后立即流式写出。
+     * 遇到尚未定义的符号时先写出占位并记录回填位置，等对应的 (LABEL) 出现时再按位置回填；
+     * 扫描结束后仍未解析的符号视为变量，按首次使用顺序分配地址，
+     * 因此输出与原先两次扫描的结果逐字节一致。
+     * 除回填表外不保存任何指令，内存占用与程序大小无关。
+     * @param writer 输出 .hack 或 .rom 文件的 RomWriter
+     * @throws IOException 如果写入文件失败
+     */
+    private void assembleSequential(RomWriter writer) throws IOException {
+        int romAddress = 0; // ROM 地址计数器，记录指令的地址
+        // 待回填表：符号 -> 引用它的指令地址；LinkedHashMap 保留符号的首次使用顺序
+        LinkedHashMap<String, ArrayList<Integer>> fixups = new LinkedHashMap<>();
         while (parser.hasMoreCommands()) {
             parser.advance(); // 前进到下一条命令
             String commandType = parser.commandType();
@@ -76,75 +180,296 @@ public class Assembler {
                 continue; // 跳过无效命令
             }
 
-            if (commandType.equals(Parser.A_COMMAND)) {
-                // 处理 A 指令：@xxx，翻译为 16 位二进制地址
+            if (commandType.equals(Parser.L_COMMAND)) {
+                // 遇到 L_COMMAND，将标签添加到符号表（L_COMMAND 不占用 ROM 地址）
                 String symbol = parser.symbol();
-                if (symbol == null || symbol.trim().isEmpty()) {
+                symbolTable.addEntry(symbol, romAddress);
+                // 回填此前对该标签的前向引用
+                ArrayList<Integer> pending = fixups.isEmpty() ? null : fixups.remove(symbol);
+                if (pending != null) {
+                    for (int index : pending) {
+                        writer.patch(index, romAddress);
+                    }
+                }
+                continue;
+            }
+
+            int word;
+            if (commandType.equals(Parser.A_COMMAND)) {
+                // 处理 A 指令：@xxx，最高位为 0，低 15 位为地址
+                if (parser.symbolStart() == parser.symbolEnd()) {
                     continue; // 如果 symbol 为空，跳过
                 }
-                int address;
-                if (symbol.matches("\\d+")) {
-                    // 如果是数字（例如 @123），直接转换为整数
-                    address = Integer.parseInt(symbol);
-                } else {
-                    // 如果是符号（例如 @LOOP 或 @i）
-                    if (!symbolTable.contains(symbol)) {
-                        // 如果符号不存在（变量），分配新地址
-                        address = symbolTable.allocateVariableAddress(symbol);
-                    } else {
-                        // 如果符号已存在（标签或预定义符号），获取地址
-                        address = symbolTable.getAddress(symbol);
+                // 如果是数字（例如 @123），直接从缓冲区解析，无需创建字符串
+                word = parser.symbolValue();
+                if (word < 0) {
+                    // 如果符号已存在（标签或预定义符号），直接用缓冲区区间查表获取地址
+                    word = symbolTable.getAddress(parser.buffer(), parser.symbolStart(), parser.symbolEnd());
+                    if (word < 0) {
+                        // 符号尚未定义：可能是后面的标签，也可能是变量，先占位等待回填
+                        fixups.computeIfAbsent(parser.symbol(), k -> new ArrayList<>()).add(romAddress);
+                        word = 0;
                     }
                 }
-                // 将地址转换为 16 位二进制字符串（高位补 0）
-                String binary = String.format("%16s", Integer.toBinaryString(address)).replace(' ', '0');
-                binaryLines.add(binary); // 添加到列表
-            } else if (commandType.equals(Parser.C_COMMAND)) {
-                // 处理 C 指令：dest=comp;jump，翻译为 16 位二进制
-                // 格式：111 + comp(7 位) + dest(3 位) + jump(3 位)
-                String comp = parser.comp();
-                if (comp == null || comp.trim().isEmpty()) {
+            } else {
+                // 处理 C 指令：dest=comp;jump，格式：111 + comp(7 位) + dest(3 位) + jump(3 位)
+                if (parser.compStart() == parser.compEnd()) {
                     continue; // 如果 comp 为空，跳过
                 }
-                String compBinary = code.comp(comp); // 获取 comp 的 7 位二进制
-                String destBinary = code.dest(parser.dest()); // 获取 dest 的 3 位二进制
-                String jumpBinary = code.jump(parser.jump()); // 获取 jump 的 3 位二进制
-                String binary = "111" + compBinary + destBinary + jumpBinary;
-                binaryLines.add(binary); // 添加到列表
+                // 直接在缓冲区上一次扫描解码整条指令，未知助记符会抛出 IllegalArgumentException
+                word = Code.decode(parser.buffer(), parser.commandStart(), parser.commandEnd());
             }
-            // L_COMMAND 在第一次扫描中已处理，此处忽略
+            writer.write(word);
+            romAddress++;
         }
 
-        // 写入文件：确保最后一行不以 \n 结尾
-        for (int i = 0; i < binaryLines.size(); i++) {
-            String binary = binaryLines.get(i);
-            if (i == binaryLines.size() - 1) {
-                // 最后一行，不添加 \n
-                writer.print(binary);
-            } else {
-                // 其他行，添加 \n
-                writer.print(binary + "\n");
+        // 扫描结束后仍未解析的符号都是变量，按首次使用顺序从 16 开始分配地址并回填
+        for (Map.Entry<String, ArrayList<Integer>> entry : fixups.entrySet()) {
+            int address = symbolTable.getOrAllocate(entry.getKey());
+            for (int index : entry.getValue()) {
+                writer.patch(index, address);
             }
         }
+    }
 
-        // 关闭输出文件
-        writer.close();
-        // 关闭 Parser 的输入文件
-        parser.close();
+    /**
+     * 命令行选项。
+     */
+    private static class Options {
+        boolean binary;            // --binary：输出二进制 ROM 镜像（.rom）
+        boolean parallel;          // --parallel：按块并行汇编
+        boolean stats;             // --stats：输出缓存命中率和节省的时间
+        boolean server;            // --server：从标准输入读取请求的常驻模式
+        int port = -1;             // --port=N：监听本地端口的常驻模式
+        int jobs = Runtime.getRuntime().availableProcessors(); // -j N / --jobs=N：批量汇编的线程数
+        String cacheDirectory;     // --cache / --cache-dir=目录：增量汇编缓存目录
+        List<String> inputs = new ArrayList<>(); // .asm 文件、目录或 @清单文件
+
+        /**
+         * 解析命令行参数。
+         * @param args 命令行参数
+         * @return 解析结果；参数无效时返回 null
+         */
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("--binary")) {
+                    options.binary = true;
+                } else if (arg.equals("--parallel")) {
+                    options.parallel = true;
+                } else if (arg.equals("--cache")) {
+                    options.cacheDirectory = AssemblyCache.DEFAULT_DIRECTORY;
+                } else if (arg.startsWith("--cache-dir=")) {
+                    options.cacheDirectory = arg.substring("--cache-dir=".length());
+                } else if (arg.equals("--stats")) {
+                    options.stats = true;
+                } else if (arg.equals("--server")) {
+                    options.server = true;
+                } else if (arg.startsWith("--port=")) {
+                    options.port = parseInt(arg.substring("--port=".length()));
+                } else if (arg.equals("-j") && i + 1 < args.length) {
+                    options.jobs = parseInt(args[++i]);
+                } else if (arg.startsWith("--jobs=")) {
+                    options.jobs = parseInt(arg.substring("--jobs=".length()));
+                } else if (arg.startsWith("-")) {
+                    return null; // 未知选项
+                } else {
+                    options.inputs.add(arg);
+                }
+            }
+            if (options.jobs <= 0 || (options.inputs.isEmpty() && !options.server && options.port < 0)) {
+                return null;
+            }
+            if (options.server && options.port >= 0) {
+                return null; // 两种常驻模式只能选一种
+            }
+            return options;
+        }
+
+        // 辅助方法：解析数值参数，无效时返回 -1
+        private static int parseInt(String value) {
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
     }
 
     /**
-     * 主方法：命令行入口，接受 .asm 文件路径，执行汇编。
-     * @param args 命令行参数，args[0] 为输入文件路径
+     * 批量汇编：展开目录和清单文件后，在有界线程池上并发汇编所有 .asm 文件。
+     * 错误信息按输入顺序输出，一个文件失败不影响其他文件。
+     * @param options 命令行选项
+     * @param pool 执行汇编任务的线程池，常驻模式下由所有请求共享
+     * @param out 输出流，用于报告错误和统计信息
+     * @return 汇编失败的文件数
+     * @throws IOException 如果目录或清单文件无法读取，或缓存目录无法创建
+     */
+    private static int assembleBatch(Options options, ExecutorService pool, PrintStream out) throws IOException {
+        List<String> files = new ArrayList<>();
+        for (String input : options.inputs) {
+            expandInput(input, files);
+        }
+        AssemblyCache cache = options.cacheDirectory == null ? null : new AssemblyCache(options.cacheDirectory);
+
+        List<Future<Void>> results = new ArrayList<>();
+        for (String file : files) {
+            results.add(pool.submit(() -> {
+                assembleFile(file, options.binary, options.parallel, cache);
+                return null;
+            }));
+        }
+
+        int failures = 0;
+        for (int i = 0; i < files.size(); i++) {
+            try {
+                results.get(i).get();
+            } catch (ExecutionException e) {
+                failures++;
+                out.println("汇编失败 " + files.get(i) + ": " + e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("批量汇编被中断");
+            }
+        }
+        if (options.stats && cache != null) {
+            cache.printStats(out);
+        }
+        return failures;
+    }
+
+    /**
+     * 展开一个输入：目录展开为其中（含子目录）的全部 .asm 文件，@清单文件展开为其中列出的每一行路径，
+     * 其他参数视为单个 .asm 文件。清单中的相对路径相对于清单文件所在目录。
+     * @param input 输入参数
+     * @param files 展开结果追加到此列表
+     * @throws IOException 如果目录或清单文件无法读取
+     */
+    private static void expandInput(String input, List<String> files) throws IOException {
+        if (input.startsWith("@")) {
+            Path manifest = Paths.get(input.substring(1));
+            Path base = manifest.toAbsolutePath().getParent();
+            for (String line : Files.readAllLines(manifest)) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    expandInput(base.resolve(line).toString(), files);
+                }
+            }
+        } else if (Files.isDirectory(Paths.get(input))) {
+            try (Stream<Path> paths = Files.walk(Paths.get(input))) {
+                paths.map(Path::toString).filter(name -> name.endsWith(".asm")).sorted().forEach(files::add);
+            }
+        } else {
+            files.add(input);
+        }
+    }
+
+    /**
+     * 常驻模式：逐行读取请求，每行是一组与命令行相同的参数，汇编完成后回复一行结果：
+     * "OK" 或 "ERROR 失败数"（之前可能有若干行错误和统计信息）。读到 "quit" 或输入结束时返回。
+     * 在同一个 JVM 中反复处理请求，省去每次启动 JVM 和 JIT 预热的开销。
+     * 请求中的 -j 不起作用，汇编任务都提交到启动时按 -j 创建的共享线程池。
+     * @param in 请求输入流
+     * @param pool 共享的汇编线程池
+     * @param out 回复输出流
+     * @throws IOException 如果读取请求失败
+     */
+    private static void serve(InputStream in, ExecutorService pool, PrintStream out) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (line.equals("quit")) {
+                break;
+            }
+            Options options = Options.parse(line.split("\\s+"));
+            if (options == null || options.inputs.isEmpty() || options.server || options.port >= 0) {
+                out.println("ERROR 无效的请求: " + line);
+            } else {
+                try {
+                    int failures = assembleBatch(options, pool, out);
+                    out.println(failures == 0 ? "OK" : "ERROR " + failures);
+                } catch (IOException | RuntimeException e) {
+                    out.println("ERROR " + e.getMessage());
+                }
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * 主方法：命令行入口，接受一个或多个 .asm 文件、目录或 @清单文件，执行汇编。
+     * @param args 命令行参数，输入之外可以有以下选项：
+     *             --binary 输出二进制 ROM 镜像（.rom）；
+     *             --parallel 按块并行汇编；
+     *             --cache 使用增量汇编缓存（目录为 AssemblyCache.DEFAULT_DIRECTORY）；
+     *             --cache-dir=目录 使用指定目录下的增量汇编缓存；
+     *             --stats 输出缓存命中率和节省的时间；
+     *             -j N 或 --jobs=N 批量汇编时的线程数（默认为 CPU 核数）；
+     *             --server 常驻模式，从标准输入逐行读取请求；
+     *             --port=N 常驻模式，监听 127.0.0.1 上的端口，每个连接逐行发送请求；
+     *             最多同时处理 MAX_CONNECTIONS 个连接，不能与 --server 同时使用
      * @throws IOException 如果文件处理过程中发生错误
      */
     public static void main(String[] args) throws IOException {
-        if (args.length != 1) {
+        Options options = Options.parse(args);
+        if (options == null) {
             // 检查命令行参数是否正确
-            System.out.println("用法: java Assembler <input.asm>");
+            System.out.println("用法: java Assembler [--binary] [--parallel] [--cache | --cache-dir=<dir>] [--stats]"
+                    + " [-j N] [--server | --port=N] <input.asm | dir | @manifest>...");
             return;
         }
-        Assembler assembler = new Assembler(args[0]); // 创建 Assembler 实例
-        assembler.assemble(); // 执行汇编
+        // 汇编线程池：所有请求、所有连接共享，线程数不超过 -j
+        ExecutorService pool = Executors.newFixedThreadPool(options.jobs);
+        try {
+            if (options.port >= 0) {
+                listen(options.port, pool);
+            } else if (options.server) {
+                serve(System.in, pool, System.out);
+            } else if (assembleBatch(options, pool, System.out) > 0) {
+                System.exit(1);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * --port 模式：在 127.0.0.1 上监听端口，每个连接交给有界的连接线程池处理，汇编任务提交到共享的汇编线程池。
+     * 连接线程只等待汇编结果，不执行汇编任务，因此两个线程池分开，避免连接占满线程后汇编任务无线程可用。
+     * 正在处理和排队的连接都已满时，新连接收到一行错误信息后立即关闭。
+     * @param port 端口号
+     * @param pool 共享的汇编线程池
+     * @throws IOException 如果端口无法监听
+     */
+    private static void listen(int port, ExecutorService pool) throws IOException {
+        ExecutorService connections = new ThreadPoolExecutor(MAX_CONNECTIONS, MAX_CONNECTIONS, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(MAX_PENDING_CONNECTIONS));
+        try (ServerSocket server = new ServerSocket(port, MAX_PENDING_CONNECTIONS, InetAddress.getLoopbackAddress())) {
+            while (true) {
+                Socket socket = server.accept();
+                try {
+                    connections.execute(() -> {
+                        try (Socket client = socket) {
+                            serve(client.getInputStream(), pool, new PrintStream(client.getOutputStream(), true));
+                        } catch (IOException e) {
+                            System.err.println("连接处理失败: " + e.getMessage());
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    try (Socket client = socket) {
+                        new PrintStream(client.getOutputStream(), true).println("ERROR 服务器繁忙");
+                    } catch (IOException ignored) {
+                        // 客户端已断开，无需回复
+                    }
+                }
+            }
+        } finally {
+            connections.shutdown();
+        }
     }
-}
\ No newline at end of file
+}
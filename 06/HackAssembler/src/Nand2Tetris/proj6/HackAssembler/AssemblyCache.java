@@ -0,0 +1,132 @@
+package Nand2Tetris.proj6.HackAssembler;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * AssemblyCache 类：增量汇编的磁盘缓存。
+ * 以输入文件内容、汇编器版本和输出格式的 SHA-256 哈希为键，保存汇编结果（.hack 或 .rom）。
+ * 命中时完全跳过解析，直接把缓存文件复制到输出位置。
+ * 不使用硬链接：输出文件之后可能被原地改写（RomImage.writeBinary、重定向等），硬链接会连带破坏缓存项。
+ * 每个缓存项旁边另存一份 .time 文件，记录当初汇编耗时，用于统计命中节省的时间。
+ * 所有方法都是线程安全的，可供批量模式的多个线程共享。
+ */
+public class AssemblyCache {
+    // 汇编器版本：输出格式或编码逻辑变化时必须修改，使旧的缓存项全部失效
+    public static final String ASSEMBLER_VERSION = "2.0";
+    // 默认缓存目录
+    public static final String DEFAULT_DIRECTORY = System.getProperty("user.home") + "/.hack-assembler/cache";
+
+    // 缓存目录
+    private final Path directory;
+    // 统计数据：命中次数、未命中次数、命中节省的时间（纳秒）
+    private int hits;
+    private int misses;
+    private long savedNanos;
+
+    /**
+     * 构造函数：使用指定的缓存目录，不存在时自动创建。
+     * @param directory 缓存目录
+     * @throws IOException 如果目录无法创建
+     */
+    public AssemblyCache(String directory) throws IOException {
+        this.directory = Paths.get(directory);
+        Files.createDirectories(this.directory);
+    }
+
+    /**
+     * 计算输入文件的缓存键。
+     * @param inputFile 输入的 .asm 文件路径
+     * @param binary 输出格式是否为二进制 ROM 镜像
+     * @return 十六进制的 SHA-256 哈希
+     * @throws IOException 如果文件无法读取
+     */
+    public String key(String inputFile, boolean binary) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // 每个 Java 平台都必须支持 SHA-256
+        }
+        digest.update((ASSEMBLER_VERSION + (binary ? "/binary/" : "/text/")).getBytes(StandardCharsets.UTF_8));
+        digest.update(Files.readAllBytes(Paths.get(inputFile)));
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest()) {
+            key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return key.toString();
+    }
+
+    /**
+     * 尝试用缓存结果生成输出文件。
+     * @param key 缓存键
+     * @param outputFile 输出文件路径
+     * @param keyNanos 计算缓存键所花费的时间，计入命中的开销
+     * @return 命中并已生成输出文件时返回 true；未命中返回 false
+     * @throws IOException 如果输出文件无法生成
+     */
+    public boolean restore(String key, String outputFile, long keyNanos) throws IOException {
+        Path entry = directory.resolve(key);
+        if (!Files.exists(entry)) {
+            synchronized (this) {
+                misses++;
+            }
+            return false;
+        }
+        long start = System.nanoTime();
+        // REPLACE_EXISTING 会先删除旧文件，旧版本留下的指向缓存项的硬链接也随之断开
+        Files.copy(entry, Paths.get(outputFile), StandardCopyOption.REPLACE_EXISTING);
+        long cost = keyNanos + System.nanoTime() - start;
+        long original = readTime(key);
+        synchronized (this) {
+            hits++;
+            savedNanos += Math.max(0, original - cost);
+        }
+        return true;
+    }
+
+    /**
+     * 把新生成的输出文件存入缓存。
+     * 先复制到临时文件再原子地移动到位，避免其他线程或进程读到不完整的缓存项。
+     * @param key 缓存键
+     * @param outputFile 输出文件路径
+     * @param assembleNanos 本次汇编的耗时
+     * @throws IOException 如果缓存项无法写入
+     */
+    public void store(String key, String outputFile, long assembleNanos) throws IOException {
+        Path time = directory.resolve(key + ".time");
+        Path temp = Files.createTempFile(directory, key, ".tmp");
+        Files.write(temp, Long.toString(assembleNanos).getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, time, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        temp = Files.createTempFile(directory, key, ".tmp");
+        Files.copy(Paths.get(outputFile), temp, StandardCopyOption.REPLACE_EXISTING);
+        Files.move(temp, directory.resolve(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 输出缓存统计：命中率与节省的时间。
+     * @param out 输出流
+     */
+    public synchronized void printStats(PrintStream out) {
+        int total = hits + misses;
+        double ratio = total == 0 ? 0 : 100.0 * hits / total;
+        out.printf("缓存命中: %d/%d (%.1f%%)，节省时间: %.1f ms%n", hits, total, ratio, savedNanos / 1e6);
+    }
+
+    // 辅助方法：读取缓存项当初的汇编耗时，无法读取时返回 0
+    private long readTime(String key) {
+        try {
+            return Long.parseLong(new String(Files.readAllBytes(directory.resolve(key + ".time")),
+                    StandardCharsets.UTF_8).trim());
+        } catch (IOException | NumberFormatException e) {
+            return 0;
+        }
+    }
+}
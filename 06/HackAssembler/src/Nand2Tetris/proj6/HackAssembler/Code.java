@@ -1,105 +1,210 @@
 package Nand2Tetris.proj6.HackAssembler;
 
-import java.util.HashMap;
+import java.util.Arrays;
 
 /**
  * Code 类：将 Hack 汇编语言的 C 指令字段（dest、comp、jump）翻译成二进制代码。
  * 实现 C 指令的二进制编码：111 a c1 c2 c3 c4 c5 c6 d1 d2 d3 j1 j2 j3
+ * 所有助记符都不超过 3 个字符，且只由少数几种字符组成：
+ * 把每个字符映射为 1-18 的小整数，按 19 进制拼接即得到互不冲突的键（完美哈希），
+ * 直接索引查找表。decode() 一次扫描原始字符即可得到完整的 16 位指令字，不创建任何字符串。
+ * 未知的助记符会被拒绝并抛出 IllegalArgumentException。
  */
 public class Code {
-    // 存储 dest 字段的助记符到二进制的映射
-    private static final HashMap<String, String> DEST_MAP = new HashMap<>();
-    // 存储 comp 字段的助记符到二进制的映射
-    private static final HashMap<String, String> COMP_MAP = new HashMap<>();
-    // 存储 jump 字段的助记符到二进制的映射
-    private static final HashMap<String, String> JUMP_MAP = new HashMap<>();
+    // C 指令的固定前缀 111，位于指令字的最高 3 位
+    public static final int C_PREFIX = 0b111 << 13;
 
-    // 静态初始化块：初始化 dest、comp 和 jump 的映射表
+    // 助记符的最大长度
+    private static final int MAX_LENGTH = 3;
+    // 完美哈希的进制：18 种有效字符加上 0（表示无效字符）
+    private static final int RADIX = 19;
+    // 查找表大小：RADIX 的 MAX_LENGTH 次方
+    private static final int TABLE_SIZE = RADIX * RADIX * RADIX;
+    // 助记符中可能出现的全部字符，下标加 1 即为该字符的编码
+    private static final String ALPHABET = "01-!+&|ADMJGTEQLNP";
+    // ASCII 字符到编码的映射，0 表示该字符不可能出现在任何助记符中
+    private static final byte[] CHAR_CODE = new byte[128];
+
+    // dest、comp、jump 三个字段的查找表：键 -> 编码，-1 表示无效助记符
+    private static final short[] DEST_TABLE = new short[TABLE_SIZE];
+    private static final short[] COMP_TABLE = new short[TABLE_SIZE];
+    private static final short[] JUMP_TABLE = new short[TABLE_SIZE];
+
+    // 静态初始化块：初始化字符编码以及 dest、comp 和 jump 的查找表
     static {
+        for (int i = 0; i < ALPHABET.length(); i++) {
+            CHAR_CODE[ALPHABET.charAt(i)] = (byte) (i + 1);
+        }
+        Arrays.fill(DEST_TABLE, (short) -1);
+        Arrays.fill(COMP_TABLE, (short) -1);
+        Arrays.fill(JUMP_TABLE, (short) -1);
+
         // 初始化 dest 映射表（3 位，8 种组合）
         // 空字符串表示不存储结果，M 表示存储到 M，D 表示存储到 D，MD 表示同时存储到 M 和 D，等等
-        DEST_MAP.put("", "000");   // 000: 不存储
-        DEST_MAP.put("M", "001");  // 001: 存储到 M
-        DEST_MAP.put("D", "010");  // 010: 存储到 D
-        DEST_MAP.put("MD", "011"); // 011: 存储到 M 和 D
-        DEST_MAP.put("A", "100");  // 100: 存储到 A
-        DEST_MAP.put("AM", "101"); // 101: 存储到 A 和 M
-        DEST_MAP.put("AD", "110"); // 110: 存储到 A 和 D
-        DEST_MAP.put("AMD", "111");// 111: 存储到 A、M 和 D
+        put(DEST_TABLE, "", 0b000);   // 000: 不存储
+        put(DEST_TABLE, "M", 0b001);  // 001: 存储到 M
+        put(DEST_TABLE, "D", 0b010);  // 010: 存储到 D
+        put(DEST_TABLE, "MD", 0b011); // 011: 存储到 M 和 D
+        put(DEST_TABLE, "A", 0b100);  // 100: 存储到 A
+        put(DEST_TABLE, "AM", 0b101); // 101: 存储到 A 和 M
+        put(DEST_TABLE, "AD", 0b110); // 110: 存储到 A 和 D
+        put(DEST_TABLE, "AMD", 0b111);// 111: 存储到 A、M 和 D
         // 兼容 DM 和 ADM（Project 6 文档中的已知问题）
-        DEST_MAP.put("DM", "011"); // DM 等价于 MD
-        DEST_MAP.put("ADM", "111");// ADM 等价于 AMD
+        put(DEST_TABLE, "DM", 0b011); // DM 等价于 MD
+        put(DEST_TABLE, "ADM", 0b111);// ADM 等价于 AMD
 
         // 初始化 comp 映射表（7 位，28 种 ALU 运算）
         // 格式：a c1 c2 c3 c4 c5 c6
         // a 位决定使用 A 还是 M（0 表示 A，1 表示 M）
         // c1-c6 控制 ALU 运算
-        COMP_MAP.put("0", "0101010");   // 0
-        COMP_MAP.put("1", "0111111");   // 1
-        COMP_MAP.put("-1", "0111010");  // -1
-        COMP_MAP.put("D", "0001100");   // D
-        COMP_MAP.put("A", "0110000");   // A
-        COMP_MAP.put("!D", "0001101");  // !D
-        COMP_MAP.put("!A", "0110001");  // !A
-        COMP_MAP.put("-D", "0001111");  // -D
-        COMP_MAP.put("-A", "0110011");  // -A
-        COMP_MAP.put("D+1", "0011111"); // D+1
-        COMP_MAP.put("A+1", "0110111"); // A+1
-        COMP_MAP.put("D-1", "0001110"); // D-1
-        COMP_MAP.put("A-1", "0110010"); // A-1
-        COMP_MAP.put("D+A", "0000010"); // D+A
-        COMP_MAP.put("D-A", "0010011"); // D-A
-        COMP_MAP.put("A-D", "0000111"); // A-D
-        COMP_MAP.put("D&A", "0000000"); // D&A
-        COMP_MAP.put("D|A", "0010101"); // D|A
+        put(COMP_TABLE, "0", 0b0101010);   // 0
+        put(COMP_TABLE, "1", 0b0111111);   // 1
+        put(COMP_TABLE, "-1", 0b0111010);  // -1
+        put(COMP_TABLE, "D", 0b0001100);   // D
+        put(COMP_TABLE, "A", 0b0110000);   // A
+        put(COMP_TABLE, "!D", 0b0001101);  // !D
+        put(COMP_TABLE, "!A", 0b0110001);  // !A
+        put(COMP_TABLE, "-D", 0b0001111);  // -D
+        put(COMP_TABLE, "-A", 0b0110011);  // -A
+        put(COMP_TABLE, "D+1", 0b0011111); // D+1
+        put(COMP_TABLE, "A+1", 0b0110111); // A+1
+        put(COMP_TABLE, "D-1", 0b0001110); // D-1
+        put(COMP_TABLE, "A-1", 0b0110010); // A-1
+        put(COMP_TABLE, "D+A", 0b0000010); // D+A
+        put(COMP_TABLE, "D-A", 0b0010011); // D-A
+        put(COMP_TABLE, "A-D", 0b0000111); // A-D
+        put(COMP_TABLE, "D&A", 0b0000000); // D&A
+        put(COMP_TABLE, "D|A", 0b0010101); // D|A
         // 当 a=1 时，使用 M 替代 A
-        COMP_MAP.put("M", "1110000");   // M
-        COMP_MAP.put("!M", "1110001");  // !M
-        COMP_MAP.put("-M", "1110011");  // -M
-        COMP_MAP.put("M+1", "1110111"); // M+1
-        COMP_MAP.put("M-1", "1110010"); // M-1
-        COMP_MAP.put("D+M", "1000010"); // D+M
-        COMP_MAP.put("D-M", "1010011"); // D-M
-        COMP_MAP.put("M-D", "1000111"); // M-D
-        COMP_MAP.put("D&M", "1000000"); // D&M
-        COMP_MAP.put("D|M", "1010101"); // D|M
+        put(COMP_TABLE, "M", 0b1110000);   // M
+        put(COMP_TABLE, "!M", 0b1110001);  // !M
+        put(COMP_TABLE, "-M", 0b1110011);  // -M
+        put(COMP_TABLE, "M+1", 0b1110111); // M+1
+        put(COMP_TABLE, "M-1", 0b1110010); // M-1
+        put(COMP_TABLE, "D+M", 0b1000010); // D+M
+        put(COMP_TABLE, "D-M", 0b1010011); // D-M
+        put(COMP_TABLE, "M-D", 0b1000111); // M-D
+        put(COMP_TABLE, "D&M", 0b1000000); // D&M
+        put(COMP_TABLE, "D|M", 0b1010101); // D|M
 
         // 初始化 jump 映射表（3 位，8 种组合）
         // 空字符串表示不跳转，JGT 表示大于时跳转，JEQ 表示等于时跳转，等等
-        JUMP_MAP.put("", "000");   // 000: 不跳转
-        JUMP_MAP.put("JGT", "001"); // 001: 大于 0 时跳转
-        JUMP_MAP.put("JEQ", "010"); // 010: 等于 0 时跳转
-        JUMP_MAP.put("JGE", "011"); // 011: 大于等于 0 时跳转
-        JUMP_MAP.put("JLT", "100"); // 100: 小于 0 时跳转
-        JUMP_MAP.put("JNE", "101"); // 101: 不等于 0 时跳转
-        JUMP_MAP.put("JLE", "110"); // 110: 小于等于 0 时跳转
-        JUMP_MAP.put("JMP", "111"); // 111: 无条件跳转
+        put(JUMP_TABLE, "", 0b000);   // 000: 不跳转
+        put(JUMP_TABLE, "JGT", 0b001); // 001: 大于 0 时跳转
+        put(JUMP_TABLE, "JEQ", 0b010); // 010: 等于 0 时跳转
+        put(JUMP_TABLE, "JGE", 0b011); // 011: 大于等于 0 时跳转
+        put(JUMP_TABLE, "JLT", 0b100); // 100: 小于 0 时跳转
+        put(JUMP_TABLE, "JNE", 0b101); // 101: 不等于 0 时跳转
+        put(JUMP_TABLE, "JLE", 0b110); // 110: 小于等于 0 时跳转
+        put(JUMP_TABLE, "JMP", 0b111); // 111: 无条件跳转
     }
     /**
-     * 将 C 指令的 dest 助记符翻译为 3 位二进制代码。
+     * 将 C 指令的 dest 助记符翻译为 3 位编码。
      * @param mnemonic dest 助记符（例如 "M", "D", "MD" 等）
-     * @return 3 位二进制字符串；如果助记符无效，返回 "000"
+     * @return 3 位编码（d1 d2 d3）
+     * @throws IllegalArgumentException 如果助记符无效
      */
-    public String dest(String mnemonic) {
-        // 查找映射表，获取对应的二进制代码
-        return DEST_MAP.getOrDefault(mnemonic, "000");
+    public int dest(String mnemonic) {
+        return lookup(DEST_TABLE, mnemonic.toCharArray(), 0, mnemonic.length(), "dest");
     }
     /**
-     * 将 C 指令的 comp 助记符翻译为 7 位二进制代码。
+     * 将 C 指令的 comp 助记符翻译为 7 位编码。
      * @param mnemonic comp 助记符（例如 "D+A", "M", "0" 等）
-     * @return 7 位二进制字符串；如果助记符无效，返回 "0000000"
+     * @return 7 位编码（a c1-c6）
+     * @throws IllegalArgumentException 如果助记符无效
      */
-    public String comp(String mnemonic) {
-        // 查找映射表，获取对应的二进制代码
-        return COMP_MAP.getOrDefault(mnemonic, "0000000");
+    public int comp(String mnemonic) {
+        return lookup(COMP_TABLE, mnemonic.toCharArray(), 0, mnemonic.length(), "comp");
     }
     /**
-     * 将 C 指令的 jump 助记符翻译为 3 位二进制代码。
+     * 将 C 指令的 jump 助记符翻译为 3 位编码。
      * @param mnemonic jump 助记符（例如 "JGT", "JEQ", "JMP" 等）
-     * @return 3 位二进制字符串；如果助记符无效，返回 "000"
+     * @return 3 位编码（j1 j2 j3）
+     * @throws IllegalArgumentException 如果助记符无效
+     */
+    public int jump(String mnemonic) {
+        return lookup(JUMP_TABLE, mnemonic.toCharArray(), 0, mnemonic.length(), "jump");
+    }
+    /**
+     * 将 comp、dest、jump 三个字段的编码拼装为完整的 16 位 C 指令字。
+     * @param comp 7 位 comp 编码
+     * @param dest 3 位 dest 编码
+     * @param jump 3 位 jump 编码
+     * @return 16 位指令字：111 a c1-c6 d1-d3 j1-j3
+     */
+    public static int cInstruction(int comp, int dest, int jump) {
+        return C_PREFIX | (comp << 6) | (dest << 3) | jump;
+    }
+    /**
+     * 一次扫描原始字符，将整条 C 指令 dest=comp;jump 解码为 16 位指令字。
+     * 扫描时边读字符边累积当前字段的哈希键，遇到 '=' 或 ';' 即结束当前字段并查表。
+     * @param buffer 包含指令文本的字符缓冲区
+     * @param start 指令起始偏移（含）
+     * @param end 指令结束偏移（不含）
+     * @return 16 位指令字
+     * @throws IllegalArgumentException 如果任一字段的助记符无效
      */
-    public String jump(String mnemonic) {
-        // 查找映射表，获取对应的二进制代码
-        return JUMP_MAP.getOrDefault(mnemonic, "000");
+    public static int decode(char[] buffer, int start, int end) {
+        int dest = 0;
+        int fieldStart = start;
+        int key = 0;
+        int length = 0;
+        boolean seenEquals = false;
+        for (int i = start; i < end; i++) {
+            char c = buffer[i];
+            if (c == '=' && !seenEquals) {
+                // '=' 之前是 dest 字段
+                dest = entry(DEST_TABLE, key, length, buffer, fieldStart, i, "dest");
+                seenEquals = true;
+                fieldStart = i + 1;
+                key = 0;
+                length = 0;
+            } else if (c == ';') {
+                // ';' 之前是 comp 字段，之后是 jump 字段
+                int comp = entry(COMP_TABLE, key, length, buffer, fieldStart, i, "comp");
+                int jump = lookup(JUMP_TABLE, buffer, i + 1, end, "jump");
+                return cInstruction(comp, dest, jump);
+            } else {
+                int code = charCode(c);
+                key = key * RADIX + code;
+                length += code == 0 ? MAX_LENGTH + 1 : 1; // 无效字符直接使该字段超长
+            }
+        }
+        return cInstruction(entry(COMP_TABLE, key, length, buffer, fieldStart, end, "comp"), dest, 0);
+    }
+
+    // 辅助方法：向查找表中添加一个助记符及其编码
+    private static void put(short[] table, String mnemonic, int bits) {
+        int key = 0;
+        for (int i = 0; i < mnemonic.length(); i++) {
+            key = key * RADIX + charCode(mnemonic.charAt(i));
+        }
+        table[key] = (short) bits;
+    }
+
+    // 辅助方法：计算缓冲区区间 [start, end) 的哈希键并查表
+    private static int lookup(short[] table, char[] buffer, int start, int end, String field) {
+        int key = 0;
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            int code = charCode(buffer[i]);
+            key = key * RADIX + code;
+            length += code == 0 ? MAX_LENGTH + 1 : 1; // 无效字符直接使该字段超长
+        }
+        return entry(table, key, length, buffer, start, end, field);
+    }
+
+    // 辅助方法：按已算好的哈希键查表；超长、含无效字符或不在表中的助记符均视为无效
+    private static int entry(short[] table, int key, int length, char[] buffer, int start, int end, String field) {
+        int bits = length <= MAX_LENGTH ? table[key] : -1;
+        if (bits < 0) {
+            throw new IllegalArgumentException("无效的 " + field + " 助记符: " + new String(buffer, start, end - start));
+        }
+        return bits;
+    }
+
+    // 辅助方法：返回字符的编码；无效字符返回 0
+    private static int charCode(char c) {
+        return c < 128 ? CHAR_CODE[c] : 0;
     }
 }
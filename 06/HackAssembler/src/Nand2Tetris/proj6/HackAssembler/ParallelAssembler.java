@@ -0,0 +1,223 @@
+package Nand2Tetris.proj6.HackAssembler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * ParallelAssembler 类：将超大的 .asm 文件按行边界切分为若干块，在 ForkJoinPool 上并行汇编。
+ * 1. 并行扫描：每块独立解析、编码数值 A 指令和 C 指令，记录块内标签的局部 ROM 偏移、
+ *    符号引用的位置，以及符号的块内首次使用顺序。
+ * 2. 合并：对各块指令数做前缀和得到块的起始 ROM 地址，按块顺序登记标签；
+ *    再按块顺序遍历各块的首次使用符号，为变量分配地址，顺序与顺序汇编器完全一致。
+ * 3. 并行回填：每块把自己的指令字复制到最终输出数组中的位置，并解析符号引用。
+ * 输出与 Assembler 的顺序汇编结果逐字节一致。
+ */
+public class ParallelAssembler {
+    // 每块的最小字符数：块太小时并行调度的开销得不偿失
+    private static final int MIN_CHUNK_SIZE = 1 << 16;
+    // 每个工作线程分到的块数，多切几块便于负载均衡
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    // 输入文件的全部内容
+    private final char[] buffer;
+    // 输入文件的路径，仅用于错误信息
+    private final String filePath;
+    // 用于管理符号和地址的 SymbolTable 对象
+    private final SymbolTable symbolTable;
+    // 执行并行任务的线程池
+    private final ForkJoinPool pool;
+
+    /**
+     * 单个块的扫描结果。
+     */
+    private static class Chunk {
+        final int start;  // 块在缓冲区中的起始偏移（含）
+        final int end;    // 块在缓冲区中的结束偏移（不含）
+        int[] words = new int[256]; // 块内指令字，符号引用先占位为 0
+        int count;        // 块内指令数
+        int base;         // 块的起始 ROM 地址，由前缀和计算
+        // 块内标签及其局部 ROM 偏移
+        final ArrayList<String> labels = new ArrayList<>();
+        int[] labelOffsets = new int[16];
+        // 块内符号引用：指令的局部下标及其符号
+        int[] fixupIndexes = new int[64];
+        final ArrayList<String> fixupSymbols = new ArrayList<>();
+        // 块内非数值符号按首次使用顺序去重
+        final LinkedHashSet<String> symbols = new LinkedHashSet<>();
+
+        Chunk(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * 构造函数：使用公共 ForkJoinPool。
+     * @param buffer 输入文件内容
+     * @param filePath 输入文件的路径，仅用于错误信息，可以为 null
+     * @param symbolTable 符号表（包含预定义符号），汇编后包含所有标签和变量
+     */
+    public ParallelAssembler(char[] buffer, String filePath, SymbolTable symbolTable) {
+        this(buffer, filePath, symbolTable, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 构造函数。
+     * @param buffer 输入文件内容
+     * @param filePath 输入文件的路径，仅用于错误信息，可以为 null
+     * @param symbolTable 符号表（包含预定义符号），汇编后包含所有标签和变量
+     * @param pool 执行并行任务的线程池
+     */
+    public ParallelAssembler(char[] buffer, String filePath, SymbolTable symbolTable, ForkJoinPool pool) {
+        this.buffer = buffer;
+        this.filePath = filePath;
+        this.symbolTable = symbolTable;
+        this.pool = pool;
+    }
+
+    /**
+     * 执行并行汇编。
+     * @return 全部 16 位指令字，下标即 ROM 地址
+     * @throws IllegalArgumentException 如果某条 C 指令包含未知助记符，或 A 指令的常数超出范围
+     */
+    public int[] assemble() {
+        List<Chunk> chunks = split();
+
+        // 第一阶段：并行扫描并编码各块
+        List<Callable<Void>> scans = new ArrayList<>();
+        for (Chunk chunk : chunks) {
+            scans.add(() -> {
+                scan(chunk);
+                return null;
+            });
+        }
+        runAll(scans);
+
+        // 合并：前缀和计算各块起始地址，按块顺序登记标签
+        int total = 0;
+        for (Chunk chunk : chunks) {
+            chunk.base = total;
+            total += chunk.count;
+            for (int i = 0; i < chunk.labels.size(); i++) {
+                symbolTable.addEntry(chunk.labels.get(i), chunk.base + chunk.labelOffsets[i]);
+            }
+        }
+        // 仍未定义的符号是变量，按全局首次使用顺序分配地址（已存在的符号不受影响）
+        for (Chunk chunk : chunks) {
+            for (String symbol : chunk.symbols) {
+                symbolTable.getOrAllocate(symbol);
+            }
+        }
+
+        // 第二阶段：并行把各块写入最终位置并回填符号引用
+        int[] words = new int[total];
+        List<Callable<Void>> writes = new ArrayList<>();
+        for (Chunk chunk : chunks) {
+            writes.add(() -> {
+                System.arraycopy(chunk.words, 0, words, chunk.base, chunk.count);
+                for (int i = 0; i < chunk.fixupSymbols.size(); i++) {
+                    words[chunk.base + chunk.fixupIndexes[i]] = symbolTable.getAddress(chunk.fixupSymbols.get(i));
+                }
+                return null;
+            });
+        }
+        runAll(writes);
+        return words;
+    }
+
+    // 辅助方法：按行边界把缓冲区切分为若干块
+    private List<Chunk> split() {
+        int chunkCount = Math.max(1, Math.min(buffer.length / MIN_CHUNK_SIZE,
+                pool.getParallelism() * CHUNKS_PER_THREAD));
+        int chunkSize = buffer.length / chunkCount + 1;
+        List<Chunk> chunks = new ArrayList<>();
+        int start = 0;
+        while (start < buffer.length) {
+            int end = Math.min(buffer.length, start + chunkSize);
+            // 将块的结束位置推进到下一行的开头
+            while (end < buffer.length && buffer[end - 1] != '\n') {
+                end++;
+            }
+            chunks.add(new Chunk(start, end));
+            start = end;
+        }
+        return chunks;
+    }
+
+    // 辅助方法：扫描一个块，与 Assembler 的顺序汇编逻辑相同，但只记录符号引用而不查符号表
+    private void scan(Chunk chunk) {
+        Parser parser = new Parser(buffer, filePath, chunk.start, chunk.end);
+        while (parser.hasMoreCommands()) {
+            parser.advance();
+            String commandType = parser.commandType();
+            if (commandType.equals(Parser.L_COMMAND)) {
+                if (chunk.labels.size() == chunk.labelOffsets.length) {
+                    chunk.labelOffsets = Arrays.copyOf(chunk.labelOffsets, chunk.labelOffsets.length * 2);
+                }
+                chunk.labelOffsets[chunk.labels.size()] = chunk.count;
+                chunk.labels.add(parser.symbol());
+                continue;
+            }
+
+            int word;
+            if (commandType.equals(Parser.A_COMMAND)) {
+                if (parser.symbolStart() == parser.symbolEnd()) {
+                    continue; // 如果 symbol 为空，跳过
+                }
+                word = parser.symbolValue();
+                if (word < 0) {
+                    // 此时符号表中只有预定义符号（只读），可以并发查找
+                    word = symbolTable.getAddress(parser.buffer(), parser.symbolStart(), parser.symbolEnd());
+                }
+                if (word < 0) {
+                    // 符号引用：记录位置，合并后再回填
+                    String symbol = parser.symbol();
+                    if (chunk.fixupSymbols.size() == chunk.fixupIndexes.length) {
+                        chunk.fixupIndexes = Arrays.copyOf(chunk.fixupIndexes, chunk.fixupIndexes.length * 2);
+                    }
+                    chunk.fixupIndexes[chunk.fixupSymbols.size()] = chunk.count;
+                    chunk.fixupSymbols.add(symbol);
+                    chunk.symbols.add(symbol);
+                    word = 0;
+                }
+            } else {
+                if (parser.compStart() == parser.compEnd()) {
+                    continue; // 如果 comp 为空，跳过
+                }
+                word = Code.decode(parser.buffer(), parser.commandStart(), parser.commandEnd());
+            }
+            if (chunk.count == chunk.words.length) {
+                chunk.words = Arrays.copyOf(chunk.words, chunk.words.length * 2);
+            }
+            chunk.words[chunk.count++] = word;
+        }
+    }
+
+    // 辅助方法：在线程池上执行全部任务并等待完成，任务中的运行时异常原样抛出
+    private void runAll(List<Callable<Void>> tasks) {
+        try {
+            for (Future<Void> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("并行汇编被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            // ForkJoinPool 跨线程抛出时会用同类型的新异常包装原异常，取回原异常以保留错误信息
+            if (cause.getCause() != null && cause.getCause().getClass() == cause.getClass()) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+}
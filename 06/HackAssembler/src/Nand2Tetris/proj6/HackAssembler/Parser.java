@@ -1,34 +1,76 @@
 package Nand2Tetris.proj6.HackAssembler;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 
+/**
+ * Parser 类：Hack 汇编语言的词法/语法分析器。
+ * 将整个 .asm 文件一次性读入 char[]，用游标逐行扫描：
+ * 每条命令只在读入时分类一次，并记录各字段（symbol、dest、comp、jump）在缓冲区中的起止偏移，
+ * 扫描过程中不创建任何字符串。
+ * symbol()、dest()、comp()、jump() 等返回 String 的方法保留为基于偏移的薄适配层。
+ */
 public class Parser {
-    // 用于读取输入文件的缓冲读取器
-    private BufferedReader reader;
-    // 当前命令（已经解析并清理后的命令）
-    private String currentCommand;
-    // 下一条命令（预读的命令，尚未设为当前命令）
-    private String nextCommand;
+    // 输入文件的全部内容
+    private char[] buffer;
+    // 扫描游标：下一次查找命令的起始位置
+    private int cursor;
+    // 扫描范围的结束位置（不含），通常为文件末尾
+    private int limit;
     // 输入文件的路径（供 Assembler 重置 Parser 时使用）
     private String filePath;
     // 定义命令类型的常量，用于 commandType() 方法的返回值
     public static final String A_COMMAND = "A_COMMAND"; // A 指令，例如 @xxx
     public static final String C_COMMAND = "C_COMMAND"; // C 指令，例如 D=M+1;JGT
     public static final String L_COMMAND = "L_COMMAND"; // L 指令，例如 (LOOP)
+    // A 指令中十进制常数的最大值（15 位）
+    public static final int MAX_CONSTANT = 32767;
+
+    // 当前命令：类型与在 buffer 中的区间 [start, end)，已去除注释和首尾空白
+    private String currentType;
+    private int currentStart;
+    private int currentEnd;
+    // 当前 C 指令中 '=' 和 ';' 的位置，不存在时为 -1
+    private int currentEquals;
+    private int currentSemicolon;
+
+    // 下一条命令（预读的命令，尚未设为当前命令），字段含义同上；nextType 为 null 表示没有更多命令
+    private String nextType;
+    private int nextStart;
+    private int nextEnd;
+    private int nextEquals;
+    private int nextSemicolon;
 
     /**
-     * 构造函数：初始化 Parser，打开输入文件并准备解析。
+     * 构造函数：初始化 Parser，读入输入文件并准备解析。
      * @param filePath 输入文件的路径（.asm 文件）
      * @throws IOException 如果文件无法打开或读取时抛出异常
      */
     public Parser(String filePath) throws IOException {
         this.filePath = filePath;
-        reader = new BufferedReader(new FileReader(filePath)); // 打开文件
-        currentCommand = null; // 初始化当前命令为空
-        nextCommand = null; // 初始化下一条命令为空
-        advanceToNextCommand(); // 预读第一条有效命令，存入 nextCommand
+        buffer = new String(Files.readAllBytes(Paths.get(filePath))).toCharArray(); // 读入整个文件
+        cursor = 0;
+        limit = buffer.length;
+        currentType = null; // 初始化当前命令为空
+        advanceToNextCommand(); // 预读第一条有效命令
+    }
+
+    /**
+     * 构造函数：在已读入的缓冲区的一段区间上解析，供并行汇编时按块扫描使用。
+     * 区间的起止位置应位于行边界上。
+     * @param buffer 输入文件内容
+     * @param filePath 输入文件的路径，仅用于错误信息，可以为 null
+     * @param start 区间起始偏移（含）
+     * @param end 区间结束偏移（不含）
+     */
+    public Parser(char[] buffer, String filePath, int start, int end) {
+        this.buffer = buffer;
+        this.filePath = filePath;
+        cursor = start;
+        limit = end;
+        currentType = null; // 初始化当前命令为空
+        advanceToNextCommand(); // 预读第一条有效命令
     }
     /**
      * 获取输入文件的路径。
@@ -40,66 +82,216 @@ public class Parser {
 
     /**
      * 检查是否还有更多命令需要处理。
-     * @return 如果有更多命令（nextCommand 不为 null），返回 true；否则返回 false
+     * @return 如果有更多命令（已预读到下一条命令），返回 true；否则返回 false
      */
     public boolean hasMoreCommands() {
-        return nextCommand != null;
+        return nextType != null;
     }
 
     /**
-     * 前进到下一条命令，将 nextCommand 设为 currentCommand，并读取下一条有效命令。
-     * @throws IOException 如果文件读取过程中发生错误
+     * 前进到下一条命令，将预读的命令设为当前命令，并扫描下一条有效命令。
      */
-    public void advance() throws IOException {
+    public void advance() {
         if (!hasMoreCommands()) {
             return; // 如果没有更多命令，直接返回
         }
-        currentCommand = nextCommand; // 将预读的命令设为当前命令
-        advanceToNextCommand(); // 读取下一条有效命令
+        currentType = nextType;
+        currentStart = nextStart;
+        currentEnd = nextEnd;
+        currentEquals = nextEquals;
+        currentSemicolon = nextSemicolon;
+        advanceToNextCommand(); // 扫描下一条有效命令
     }
 
     /**
-     * 辅助方法：读取下一条有效命令，忽略空行和注释。
-     * 将读取到的有效命令存储在 nextCommand 中。
-     * @throws IOException 如果文件读取过程中发生错误
+     * 辅助方法：从游标处逐行扫描，忽略空行和注释，找到下一条有效命令后立即分类并记录字段偏移。
+     * 每行只扫描一遍：同时查找行尾和 "//" 注释起点，再收缩首尾空白。
      */
-    private void advanceToNextCommand() throws IOException {
-        nextCommand = null; // 重置 nextCommand
-        String line;
-        // 循环读取文件，直到找到有效命令或文件结束
-        while ((line = reader.readLine()) != null) {
-            line = line.trim(); // 去除首尾空白字符
-            if (line.isEmpty()) {
-                continue; // 忽略空行
+    private void advanceToNextCommand() {
+        nextType = null; // 重置预读命令
+        int length = limit;
+        while (cursor < length) {
+            int lineStart = cursor;
+            int end = -1; // 有效内容的结束位置（注释起点或行尾）
+            int i = lineStart;
+            while (i < length && buffer[i] != '\n' && buffer[i] != '\r') {
+                if (end == -1 && buffer[i] == '/' && i + 1 < length && buffer[i + 1] == '/') {
+                    end = i; // 处理行内注释：// 之后的内容忽略
+                }
+                i++;
+            }
+            cursor = i + 1; // 跳过行结束符
+            if (end == -1) {
+                end = i;
+            }
+            // 去除首尾空白字符（与 String.trim() 一致：所有 <= ' ' 的字符）
+            int start = lineStart;
+            while (start < end && buffer[start] <= ' ') {
+                start++;
+            }
+            while (end > start && buffer[end - 1] <= ' ') {
+                end--;
             }
-            // 处理行内注释：去除 // 之后的内容
-            int commentIndex = line.indexOf("//");
-            if (commentIndex != -1) {
-                line = line.substring(0, commentIndex).trim();
+            if (start == end) {
+                continue; // 忽略空行和纯注释行
             }
-            if (line.isEmpty()) {
-                continue; // 如果去掉注释后是空行，忽略
+            classify(start, end);
+            return;
+        }
+    }
+
+    // 辅助方法：对区间 [start, end) 内的命令分类，结果存入 next* 字段
+    private void classify(int start, int end) {
+        nextStart = start;
+        nextEnd = end;
+        nextEquals = -1;
+        nextSemicolon = -1;
+        if (buffer[start] == '@') {
+            nextType = A_COMMAND; // 以 @ 开头的是 A 指令
+        } else if (buffer[start] == '(' && buffer[end - 1] == ')') {
+            nextType = L_COMMAND; // 以 ( 开头并以 ) 结尾的是 L 指令
+        } else {
+            nextType = C_COMMAND; // 其他情况为 C 指令
+            // C 指令格式：dest=comp;jump，记录首个 '=' 和 ';' 的位置
+            for (int i = start; i < end; i++) {
+                if (buffer[i] == '=' && nextEquals == -1) {
+                    nextEquals = i;
+                } else if (buffer[i] == ';' && nextSemicolon == -1) {
+                    nextSemicolon = i;
+                }
             }
-            nextCommand = line; // 找到有效命令，存储到 nextCommand
-            break; // 退出循环
         }
     }
+
     /**
-     * 返回当前命令的类型（A_COMMAND、C_COMMAND 或 L_COMMAND）。
+     * 返回当前命令的类型（A_COMMAND、C_COMMAND 或 L_COMMAND），在读入时已确定。
      * @return 命令类型；如果当前命令为空，返回 null
      */
     public String commandType() {
-        if (currentCommand == null) {
-            return null; // 如果没有当前命令，返回 null
+        return currentType;
+    }
+
+    /**
+     * 返回保存输入文件内容的缓冲区，配合各 *Start()/*End() 偏移使用，调用者不应修改。
+     * @return 输入文件内容
+     */
+    public char[] buffer() {
+        return buffer;
+    }
+
+    /**
+     * @return 当前命令在缓冲区中的起始偏移（含），已去除首部空白
+     */
+    public int commandStart() {
+        return currentStart;
+    }
+
+    /**
+     * @return 当前命令在缓冲区中的结束偏移（不含），已去除注释和尾部空白
+     */
+    public int commandEnd() {
+        return currentEnd;
+    }
+
+    /**
+     * @return 当前 A_COMMAND 或 L_COMMAND 的符号在缓冲区中的起始偏移（含）
+     */
+    public int symbolStart() {
+        return currentStart + 1; // 跳过 @ 或 (
+    }
+
+    /**
+     * @return 当前 A_COMMAND 或 L_COMMAND 的符号在缓冲区中的结束偏移（不含）
+     */
+    public int symbolEnd() {
+        return currentType == L_COMMAND ? currentEnd - 1 : currentEnd; // L 指令去掉 )
+    }
+
+    /**
+     * 若当前 A_COMMAND 的符号是十进制常数（例如 @123），直接从缓冲区解析其值。
+     * A 指令只有 15 位地址，常数超过 32767 时报错，而不是静默地变成 C 指令或溢出回绕。
+     * @return 常数值；如果符号不是纯数字，返回 -1
+     * @throws IllegalArgumentException 如果常数超过 32767，信息中包含文件名和行号
+     */
+    public int symbolValue() {
+        int start = symbolStart();
+        int end = symbolEnd();
+        if (start == end) {
+            return -1;
         }
-        if (currentCommand.startsWith("@")) {
-            return A_COMMAND; // 以 @ 开头的是 A 指令
-        } else if (currentCommand.startsWith("(") && currentCommand.endsWith(")")) {
-            return L_COMMAND; // 以 ( 开头并以 ) 结尾的是 L 指令
-        } else {
-            return C_COMMAND; // 其他情况为 C 指令
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = buffer[i];
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+            if (value > MAX_CONSTANT) {
+                // 逐位检查，超长的数字也不会溢出
+                throw new IllegalArgumentException(location() + ": A 指令的常数超出范围 (0-" + MAX_CONSTANT + "): "
+                        + new String(buffer, currentStart, currentEnd - currentStart));
+            }
+        }
+        return value;
+    }
+
+    // 辅助方法：当前命令的位置 "文件:行号"，只在报错时调用，行号从缓冲区开头数换行符得到
+    private String location() {
+        int line = 1;
+        for (int i = 0; i < currentStart; i++) {
+            if (buffer[i] == '\n') {
+                line++;
+            }
         }
+        return (filePath == null ? "" : filePath + ":") + line;
+    }
+
+    /**
+     * @return 当前 C_COMMAND 的 dest 字段起始偏移（含）
+     */
+    public int destStart() {
+        return currentStart;
     }
+
+    /**
+     * @return 当前 C_COMMAND 的 dest 字段结束偏移（不含）；没有 dest 时等于 destStart()
+     */
+    public int destEnd() {
+        return currentEquals == -1 ? currentStart : currentEquals;
+    }
+
+    /**
+     * @return 当前 C_COMMAND 的 comp 字段起始偏移（含）
+     */
+    public int compStart() {
+        return currentEquals == -1 ? currentStart : currentEquals + 1;
+    }
+
+    /**
+     * @return 当前 C_COMMAND 的 comp 字段结束偏移（不含）
+     */
+    public int compEnd() {
+        // 与原实现一致：';' 出现在 '=' 之前时，comp 取到行尾
+        if (currentSemicolon == -1 || currentSemicolon < currentEquals) {
+            return currentEnd;
+        }
+        return currentSemicolon;
+    }
+
+    /**
+     * @return 当前 C_COMMAND 的 jump 字段起始偏移（含）
+     */
+    public int jumpStart() {
+        return currentSemicolon == -1 ? currentEnd : currentSemicolon + 1;
+    }
+
+    /**
+     * @return 当前 C_COMMAND 的 jump 字段结束偏移（不含）；没有 jump 时等于 jumpStart()
+     */
+    public int jumpEnd() {
+        return currentEnd;
+    }
+
     /**
      * 对于 A_COMMAND 和 L_COMMAND，返回符号或数值。
      * @return 对于 A_COMMAND，返回 @ 后的符号或数值；
@@ -107,15 +299,10 @@ public class Parser {
      *         其他情况返回 null
      */
     public String symbol() {
-        String type = commandType();
-        if (type.equals(A_COMMAND)) {
-            // 去掉 @ 前缀，例如 @123 或 @LOOP 返回 123 或 LOOP
-            return currentCommand.substring(1);
-        } else if (type.equals(L_COMMAND)) {
-            // 去掉括号，例如 (LOOP) 返回 LOOP
-            return currentCommand.substring(1, currentCommand.length() - 1);
+        if (currentType != A_COMMAND && currentType != L_COMMAND) {
+            return null; // C 指令没有 symbol 字段
         }
-        return null; // C 指令没有 symbol 字段
+        return span(symbolStart(), symbolEnd());
     }
     /**
      * 对于 C_COMMAND，返回 dest 字段。
@@ -123,15 +310,10 @@ public class Parser {
      *         如果不是 C 指令，返回 null
      */
     public String dest() {
-        if (!commandType().equals(C_COMMAND)) {
+        if (currentType != C_COMMAND) {
             return null; // 仅对 C 指令有效
         }
-        // C 指令格式：dest=comp;jump
-        int equalsIndex = currentCommand.indexOf("=");
-        if (equalsIndex == -1) {
-            return ""; // 没有 =，表示无 dest 字段
-        }
-        return currentCommand.substring(0, equalsIndex); // 返回 = 之前的内容
+        return span(destStart(), destEnd());
     }
     /**
      * 对于 C_COMMAND，返回 comp 字段。
@@ -139,27 +321,10 @@ public class Parser {
      *         如果不是 C 指令，返回 null
      */
     public String comp() {
-        if (!commandType().equals(C_COMMAND)) {
+        if (currentType != C_COMMAND) {
             return null; // 仅对 C 指令有效
         }
-        // C 指令格式：dest=comp;jump
-        int equalsIndex = currentCommand.indexOf("=");
-        int semicolonIndex = currentCommand.indexOf(";");
-        String compPart;
-        if (equalsIndex != -1 && semicolonIndex != -1) {
-            // 既有 dest 又有 jump，例如 D=M+1;JGT
-            compPart = currentCommand.substring(equalsIndex + 1, semicolonIndex);
-        } else if (equalsIndex != -1) {
-            // 只有 dest，无 jump，例如 D=M+1
-            compPart = currentCommand.substring(equalsIndex + 1);
-        } else if (semicolonIndex != -1) {
-            // 无 dest，有 jump，例如 M+1;JGT
-            compPart = currentCommand.substring(0, semicolonIndex);
-        } else {
-            // 仅 comp，例如 M+1
-            compPart = currentCommand;
-        }
-        return compPart;
+        return span(compStart(), compEnd());
     }
 
     /**
@@ -168,25 +333,22 @@ public class Parser {
      *         如果不是 C 指令，返回 null
      */
     public String jump() {
-        if (!commandType().equals(C_COMMAND)) {
+        if (currentType != C_COMMAND) {
             return null; // 仅对 C 指令有效
         }
-        // C 指令格式：dest=comp;jump
-        int semicolonIndex = currentCommand.indexOf(";");
-        if (semicolonIndex == -1) {
-            return ""; // 没有 ;，表示无 jump 字段
-        }
-        return currentCommand.substring(semicolonIndex + 1); // 返回 ; 之后的内容
+        return span(jumpStart(), jumpEnd());
+    }
+
+    // 辅助方法：将缓冲区区间 [start, end) 转换为字符串（仅供适配层使用）
+    private String span(int start, int end) {
+        return new String(buffer, start, end - start);
     }
 
     /**
-     * 关闭输入文件。
-     * @throws IOException 如果关闭文件时发生错误
+     * 关闭输入文件。文件内容在构造时已全部读入，此方法仅释放缓冲区。
      */
-    public void close() throws IOException {
-        if (reader != null) {
-            reader.close();
-        }
+    public void close() {
+        buffer = null;
     }
 
 }
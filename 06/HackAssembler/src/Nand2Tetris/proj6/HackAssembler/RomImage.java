@@ -0,0 +1,184 @@
+package Nand2Tetris.proj6.HackAssembler;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * RomImage 类：Hack ROM 镜像的读写工具。
+ * 支持两种格式：
+ * 1. 文本格式（.hack）：每行 16 个 '0'/'1' 字符，最后一行不以 \n 结尾。
+ * 2. 二进制格式（.rom）：每条指令占 2 字节，小端序紧凑存放，体积约为文本格式的 1/8.5。
+ * 二进制格式通过 FileChannel 内存映射读写，加载时可直接映射为 ShortBuffer，无需拷贝。
+ */
+public class RomImage {
+    // 二进制 ROM 镜像的扩展名
+    public static final String BINARY_EXTENSION = ".rom";
+    // 文本 ROM 镜像的扩展名
+    public static final String TEXT_EXTENSION = ".hack";
+
+    // .hack 文件中每行的字符数：16 个二进制字符加换行符
+    private static final int LINE_LENGTH = 17;
+    // 文本输出缓冲区可容纳的行数，写满后整块写出
+    private static final int WORDS_PER_FLUSH = 4096;
+
+    private RomImage() {
+    }
+
+    /**
+     * 将指令字写为二进制 ROM 镜像：每个字 2 字节，小端序。
+     * @param path 输出文件路径
+     * @param words 16 位指令字数组
+     * @param count 有效指令数
+     * @throws IOException 如果文件无法创建或写入
+     */
+    public static void writeBinary(String path, int[] words, int count) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) count * 2);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < count; i++) {
+                buffer.putShort((short) words[i]);
+            }
+            buffer.force(); // 确保映射内容落盘
+        }
+    }
+
+    /**
+     * 将二进制 ROM 镜像只读映射为 ShortBuffer，不拷贝文件内容。
+     * 通道关闭后映射依然有效，直到缓冲区被回收。
+     * @param path 二进制 ROM 镜像路径
+     * @return 每个元素为一条指令的只读 ShortBuffer
+     * @throws IOException 如果文件无法打开，或长度不是 2 的倍数
+     */
+    public static ShortBuffer map(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size % 2 != 0) {
+                throw new IOException("ROM 镜像长度不是 2 的倍数: " + path);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return buffer.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+        }
+    }
+
+    /**
+     * 读取二进制 ROM 镜像。
+     * @param path 二进制 ROM 镜像路径
+     * @return 16 位指令字数组（无符号，取值 0-65535）
+     * @throws IOException 如果文件无法读取
+     */
+    public static int[] readBinary(String path) throws IOException {
+        ShortBuffer rom = map(path);
+        int[] words = new int[rom.remaining()];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = rom.get(i) & 0xFFFF;
+        }
+        return words;
+    }
+
+    /**
+     * 将指令字渲染为 .hack 文本：每个字 16 个 '0'/'1' 字符，行间以 \n 分隔，最后一行不以 \n 结尾。
+     * 使用预分配的字符缓冲区，写满后整块输出，避免为每条指令创建字符串。
+     * @param writer 输出流（调用者负责关闭）
+     * @param words 16 位指令字数组
+     * @param count 有效指令数
+     * @throws IOException 如果写入失败
+     */
+    public static void writeText(Writer writer, int[] words, int count) throws IOException {
+        char[] buffer = new char[LINE_LENGTH * WORDS_PER_FLUSH];
+        int position = 0;
+        for (int i = 0; i < count; i++) {
+            if (position == buffer.length) {
+                writer.write(buffer, 0, position);
+                position = 0;
+            }
+            int word = words[i];
+            // 从最高位到最低位依次写出 16 个二进制字符
+            for (int bit = 15; bit >= 0; bit--) {
+                buffer[position++] = (char) ('0' + ((word >>> bit) & 1));
+            }
+            if (i != count - 1) {
+                buffer[position++] = '\n';
+            }
+        }
+        writer.write(buffer, 0, position);
+    }
+
+    /**
+     * 读取 .hack 文本 ROM 镜像，忽略空行。
+     * @param path .hack 文件路径
+     * @return 16 位指令字数组
+     * @throws IOException 如果文件无法读取，或某行不是 16 位二进制数
+     */
+    public static int[] readText(String path) throws IOException {
+        int[] words = new int[1024];
+        int count = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (line.length() != 16) {
+                    throw new IOException("无效的指令行: " + line);
+                }
+                int word = 0;
+                for (int i = 0; i < 16; i++) {
+                    char c = line.charAt(i);
+                    if (c != '0' && c != '1') {
+                        throw new IOException("无效的指令行: " + line);
+                    }
+                    word = (word << 1) | (c - '0');
+                }
+                if (count == words.length) {
+                    words = Arrays.copyOf(words, count * 2);
+                }
+                words[count++] = word;
+            }
+        }
+        return Arrays.copyOf(words, count);
+    }
+
+    /**
+     * 主方法：在文本与二进制两种格式之间转换。
+     * 输入 .hack 文件时生成同名 .rom 文件，输入 .rom 文件时生成同名 .hack 文件。
+     * @param args 命令行参数，args[0] 为输入文件路径
+     * @throws IOException 如果文件处理过程中发生错误
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.out.println("用法: java RomImage <input.hack | input.rom>");
+            return;
+        }
+        String input = args[0];
+        if (input.endsWith(TEXT_EXTENSION)) {
+            int[] words = readText(input);
+            writeBinary(replaceExtension(input, TEXT_EXTENSION, BINARY_EXTENSION), words, words.length);
+        } else if (input.endsWith(BINARY_EXTENSION)) {
+            int[] words = readBinary(input);
+            try (Writer writer = new BufferedWriter(new FileWriter(
+                    replaceExtension(input, BINARY_EXTENSION, TEXT_EXTENSION)))) {
+                writeText(writer, words, words.length);
+            }
+        } else {
+            System.out.println("输入文件必须是 .hack 或 .rom 文件");
+        }
+    }
+
+    // 辅助方法，替换文件名末尾的扩展名
+    private static String replaceExtension(String path, String from, String to) {
+        return path.substring(0, path.length() - from.length()) + to;
+    }
+}
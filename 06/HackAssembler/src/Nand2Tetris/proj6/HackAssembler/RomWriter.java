@@ -0,0 +1,141 @@
+package Nand2Tetris.proj6.HackAssembler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * RomWriter 类：把汇编器产生的指令字流式写入 .hack 或 .rom 文件。
+ * 指令字写入一块大的直接缓冲区，写满后整块写入 FileChannel，内存占用与程序大小无关。
+ * 两种格式中每条指令在文件中的位置都是固定的：
+ * 1. 文本格式：第 i 条指令的 16 个字符位于 i * 17，除第一条外每条指令前写一个 \n，
+ *    因此最后一行自然不以 \n 结尾。
+ * 2. 二进制格式：第 i 条指令位于 i * 2，小端序。
+ * 因此前向引用可以在标签出现后按位置回填：仍在缓冲区中的直接修改缓冲区，已写出的按位置写回文件。
+ */
+public class RomWriter implements AutoCloseable {
+    // 文本格式中每条指令占用的字节数：16 个二进制字符加换行符
+    private static final int TEXT_RECORD = 17;
+    // 二进制格式中每条指令占用的字节数
+    private static final int BINARY_RECORD = 2;
+    // 缓冲区可容纳的指令数，写满后整块写出
+    private static final int WORDS_PER_FLUSH = 1 << 16;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    // 是否输出二进制格式
+    private final boolean binary;
+    // 每条指令在文件中占用的字节数
+    private final int recordSize;
+    // 已写入文件的字节数，即缓冲区起始位置在文件中的偏移
+    private long flushed;
+    // 已写入的指令数
+    private int count;
+    // 回填已写出的指令时使用的小缓冲区
+    private final ByteBuffer patch;
+
+    /**
+     * 构造函数：创建输出文件，已存在的同名文件会被替换。
+     * @param path 输出文件路径
+     * @param binary 为 true 时输出二进制 ROM 镜像，否则输出文本 .hack 格式
+     * @throws IOException 如果文件无法创建
+     */
+    public RomWriter(String path, boolean binary) throws IOException {
+        // 先删除旧文件再新建：旧版本的汇编缓存会把输出文件硬链接到缓存项，不能原地改写
+        Files.deleteIfExists(Paths.get(path));
+        channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        this.binary = binary;
+        recordSize = binary ? BINARY_RECORD : TEXT_RECORD;
+        buffer = ByteBuffer.allocateDirect(recordSize * WORDS_PER_FLUSH);
+        patch = ByteBuffer.allocate(TEXT_RECORD);
+        flushed = 0;
+        count = 0;
+    }
+
+    /**
+     * 追加一条指令。
+     * @param word 16 位指令字
+     * @throws IOException 如果写入文件失败
+     */
+    public void write(int word) throws IOException {
+        if (buffer.remaining() < recordSize) {
+            flush();
+        }
+        if (binary) {
+            buffer.put((byte) word);
+            buffer.put((byte) (word >>> 8));
+        } else {
+            if (count > 0) {
+                buffer.put((byte) '\n');
+            }
+            // 从最高位到最低位依次写出 16 个二进制字符
+            for (int bit = 15; bit >= 0; bit--) {
+                buffer.put((byte) ('0' + ((word >>> bit) & 1)));
+            }
+        }
+        count++;
+    }
+
+    /**
+     * 回填一条已写入的指令。
+     * @param index 指令下标（即 ROM 地址）
+     * @param word 新的 16 位指令字
+     * @throws IOException 如果写入文件失败
+     */
+    public void patch(int index, int word) throws IOException {
+        long offset = (long) index * recordSize;
+        if (offset >= flushed) {
+            // 指令仍在缓冲区中，直接修改
+            put(buffer, (int) (offset - flushed), word);
+        } else {
+            // 指令已写出，按位置写回文件
+            patch.clear();
+            put(patch, 0, word);
+            patch.limit(binary ? BINARY_RECORD : TEXT_RECORD - 1); // 文本格式只回填 16 个字符，不含换行符
+            while (patch.hasRemaining()) {
+                channel.write(patch, offset + patch.position());
+            }
+        }
+    }
+
+    /**
+     * @return 已写入的指令数
+     */
+    public int count() {
+        return count;
+    }
+
+    // 辅助方法：在缓冲区的指定位置写入指令字的编码（不改变缓冲区的 position）
+    private void put(ByteBuffer target, int position, int word) {
+        if (binary) {
+            target.put(position, (byte) word);
+            target.put(position + 1, (byte) (word >>> 8));
+        } else {
+            for (int bit = 15; bit >= 0; bit--) {
+                target.put(position + 15 - bit, (byte) ('0' + ((word >>> bit) & 1)));
+            }
+        }
+    }
+
+    // 辅助方法：把缓冲区内容写入文件
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            flushed += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * 写出缓冲区中剩余的内容并关闭文件。
+     * @throws IOException 如果写入文件失败
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+}
@@ -1,52 +1,160 @@
 package Nand2Tetris.proj6.HackAssembler;
 
-import java.util.HashMap;
-
 /**
  * SymbolTable 类：管理 Hack 汇编语言中的符号与地址的映射。
  * 包括预定义符号（如 R0-R15、SP、SCREEN 等）、标签和变量。
- * 用于汇编器的符号解析，支持第一次扫描（添加标签）和第二次扫描（处理变量）。
+ * 用于汇编器的符号解析：扫描时添加标签，扫描结束后为变量分配地址。
+ * 采用两层开放寻址哈希表，地址以 int 存储，不装箱：
+ * 1. 静态基础层：预定义符号，类加载时构建，此后只读，所有实例共享。
+ * 2. 实例层：本次汇编中出现的标签和变量，优先于基础层查找。
+ * 既可以用 String 查找，也可以直接用字符缓冲区中的区间查找，后者不创建字符串。
  */
 public class SymbolTable {
-    // 存储符号到地址的映射
-    private HashMap<String, Integer> symbolTable;
-    // 用于分配变量地址，从 16 开始递增
-    private int variableAddress;
-    /**
-     * 构造函数：初始化符号表，添加 Hack 语言的预定义符号。
-     */
-    public SymbolTable() {
-        symbolTable = new HashMap<>();
-        variableAddress = 16; // 变量地址从 16 开始分配（Hack 语言规范）
+    // 预定义符号组成的只读基础层
+    private static final Table PREDEFINED = new Table(64);
 
-        // 初始化预定义符号（根据 Hack 语言规范）
+    // 静态初始化块：初始化预定义符号（根据 Hack 语言规范）
+    static {
         // 寄存器符号 R0-R15 映射到地址 0-15
         for (int i = 0; i <= 15; i++) {
-            symbolTable.put("R" + i, i);
+            PREDEFINED.put("R" + i, i);
         }
         // 栈指针 SP 映射到地址 0
-        symbolTable.put("SP", 0);
+        PREDEFINED.put("SP", 0);
         // 本地变量指针 LCL 映射到地址 1
-        symbolTable.put("LCL", 1);
+        PREDEFINED.put("LCL", 1);
         // 参数指针 ARG 映射到地址 2
-        symbolTable.put("ARG", 2);
+        PREDEFINED.put("ARG", 2);
         // this 指针 THIS 映射到地址 3
-        symbolTable.put("THIS", 3);
+        PREDEFINED.put("THIS", 3);
         // that 指针 THAT 映射到地址 4
-        symbolTable.put("THAT", 4);
+        PREDEFINED.put("THAT", 4);
         // 屏幕内存起始地址 SCREEN 映射到 16384
-        symbolTable.put("SCREEN", 16384);
+        PREDEFINED.put("SCREEN", 16384);
         // 键盘内存地址 KBD 映射到 24576
-        symbolTable.put("KBD", 24576);
+        PREDEFINED.put("KBD", 24576);
+    }
+
+    // 存储本次汇编中的标签和变量
+    private Table symbols;
+    // 用于分配变量地址，从 16 开始递增
+    private int variableAddress;
+
+    /**
+     * 开放寻址（线性探测）哈希表：String 键映射到 int 值。
+     * 键的哈希与 String.hashCode() 一致，因此可以直接对字符区间计算哈希并比较。
+     */
+    private static final class Table {
+        private String[] keys;
+        private int[] values;
+        private int size;
+
+        Table(int capacity) {
+            keys = new String[capacity];
+            values = new int[capacity];
+        }
+
+        // 查找键所在的槽位；不存在时返回应插入的空槽位的 (-槽位 - 1)
+        int slot(String key) {
+            int mask = keys.length - 1;
+            int i = mix(key.hashCode()) & mask;
+            while (keys[i] != null) {
+                if (keys[i].equals(key)) {
+                    return i;
+                }
+                i = (i + 1) & mask;
+            }
+            return -i - 1;
+        }
+
+        // 查找字符区间 [start, end) 所在的槽位；不存在时返回 -1
+        int slot(char[] buffer, int start, int end) {
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + buffer[i];
+            }
+            int mask = keys.length - 1;
+            int i = mix(hash) & mask;
+            while (keys[i] != null) {
+                if (matches(keys[i], buffer, start, end)) {
+                    return i;
+                }
+                i = (i + 1) & mask;
+            }
+            return -1;
+        }
+
+        // 插入或覆盖一个键
+        void put(String key, int value) {
+            int i = slot(key);
+            if (i >= 0) {
+                values[i] = value;
+            } else {
+                insert(i, key, value);
+            }
+        }
+
+        // 在 slot() 返回的空槽位上插入一个新键，避免重复探测
+        void insert(int missingSlot, String key, int value) {
+            if ((size + 1) * 2 > keys.length) {
+                resize(); // 保持装载因子不超过 1/2
+                missingSlot = slot(key);
+            }
+            int i = -missingSlot - 1;
+            keys[i] = key;
+            values[i] = value;
+            size++;
+        }
+
+        // 容量加倍并重新插入所有键
+        private void resize() {
+            String[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new String[oldKeys.length * 2];
+            values = new int[oldValues.length * 2];
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldKeys[j] != null) {
+                    int i = -slot(oldKeys[j]) - 1;
+                    keys[i] = oldKeys[j];
+                    values[i] = oldValues[j];
+                }
+            }
+        }
+
+        // 比较字符串与字符区间是否相同
+        private static boolean matches(String key, char[] buffer, int start, int end) {
+            if (key.length() != end - start) {
+                return false;
+            }
+            for (int i = 0; i < key.length(); i++) {
+                if (key.charAt(i) != buffer[start + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // 打散哈希值的高位，减少线性探测的聚集
+        private static int mix(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    /**
+     * 构造函数：初始化符号表，预定义符号由共享的基础层提供。
+     */
+    public SymbolTable() {
+        symbols = new Table(1024);
+        variableAddress = 16; // 变量地址从 16 开始分配（Hack 语言规范）
     }
     /**
      * 添加符号和对应的地址到符号表。
-     * 通常用于第一次扫描时添加标签（L_COMMAND）。
+     * 通常用于扫描时添加标签（L_COMMAND）。
      * @param symbol 符号名（例如标签名）
      * @param address 符号对应的地址（通常是 ROM 地址）
      */
     public void addEntry(String symbol, int address) {
-        symbolTable.put(symbol, address);
+        symbols.put(symbol, address);
     }
     /**
      * 检查符号是否存在于符号表中。
@@ -54,7 +162,7 @@ public class SymbolTable {
      * @return 如果符号存在，返回 true；否则返回 false
      */
     public boolean contains(String symbol) {
-        return symbolTable.containsKey(symbol);
+        return getAddress(symbol) != -1;
     }
     /**
      * 获取符号对应的地址。
@@ -62,22 +170,55 @@ public class SymbolTable {
      * @return 符号对应的地址；如果符号不存在，返回 -1
      */
     public int getAddress(String symbol) {
-        return symbolTable.getOrDefault(symbol, -1);
+        int i = symbols.slot(symbol);
+        if (i >= 0) {
+            return symbols.values[i];
+        }
+        i = PREDEFINED.slot(symbol);
+        return i >= 0 ? PREDEFINED.values[i] : -1;
     }
     /**
-     * 为新变量分配地址，并添加到符号表。
+     * 获取字符缓冲区区间 [start, end) 所表示的符号的地址，不创建字符串。
+     * @param buffer 字符缓冲区
+     * @param start 符号起始偏移（含）
+     * @param end 符号结束偏移（不含）
+     * @return 符号对应的地址；如果符号不存在，返回 -1
+     */
+    public int getAddress(char[] buffer, int start, int end) {
+        int i = symbols.slot(buffer, start, end);
+        if (i >= 0) {
+            return symbols.values[i];
+        }
+        i = PREDEFINED.slot(buffer, start, end);
+        return i >= 0 ? PREDEFINED.values[i] : -1;
+    }
+    /**
+     * 获取符号的地址；如果符号不存在，将其视为新变量，分配地址并添加到符号表。
      * 变量地址从 16 开始递增（variableAddress）。
-     * 如果变量已存在，直接返回其地址。
+     * 实例层只需一次探测即可完成查找或插入。
+     * @param symbol 符号名（例如 A_COMMAND 中的符号）
+     * @return 符号的地址
+     */
+    public int getOrAllocate(String symbol) {
+        int i = symbols.slot(symbol);
+        if (i >= 0) {
+            return symbols.values[i];
+        }
+        int predefined = PREDEFINED.slot(symbol);
+        if (predefined >= 0) {
+            return PREDEFINED.values[predefined];
+        }
+        // 如果变量不存在，分配新地址并添加到符号表
+        symbols.insert(i, symbol, variableAddress);
+        return variableAddress++;
+    }
+    /**
+     * 为新变量分配地址，并添加到符号表。
+     * 如果变量已存在，直接返回其地址。等同于 getOrAllocate()。
      * @param variable 变量名（例如 A_COMMAND 中的符号）
      * @return 变量的地址
      */
     public int allocateVariableAddress(String variable) {
-        if (!contains(variable)) {
-            // 如果变量不存在，分配新地址并添加到符号表
-            symbolTable.put(variable, variableAddress);
-            return variableAddress++;
-        }
-        // 如果变量已存在，返回其地址
-        return getAddress(variable);
+        return getOrAllocate(variable);
     }
 }
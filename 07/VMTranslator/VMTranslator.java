@@ -1,45 +1,13 @@
 package VMTranslator;
 
-import java.io.File;
-import java.io.IOException;
-
+/**
+ * 项目 7 的入口：项目 7、8 共用 08/VMTranslatorⅡ 中的同一个翻译引擎，这里只转发命令行参数。
+ * 编译时需要同时编译 08/VMTranslatorⅡ，例如：
+ * javac -d out 07/VMTranslator/*.java 08/VMTranslatorⅡ/*.java
+ * 选项与 VMTranslatorⅡ.VMTranslator 相同，例如 --backend=speed 选择周期最少的后端。
+ */
 public class VMTranslator {
     public static void main(String[] args) {
-        if (args.length != 1) {
-            System.out.println("Usage: java VMTranslator <input.vm>");
-            System.exit(1);
-        }
-
-        String inputFile = args[0];
-        String outputFile = inputFile.substring(0, inputFile.lastIndexOf('.')) + ".asm";
-
-        try {
-            Parser parser = new Parser(inputFile);
-            CodeWriter codeWriter = new CodeWriter(outputFile);
-
-            // 设置文件名（用于 static 段）
-            codeWriter.setFileName(new File(inputFile).getName());
-
-            // 逐行解析并翻译
-            while (parser.hasMoreCommands()) {
-                parser.advance();
-                Parser.CommandType commandType = parser.commandType();
-
-                if (commandType == Parser.CommandType.C_ARITHMETIC) {
-                    codeWriter.writeArithmetic(parser.arg1());
-                } else if (commandType == Parser.CommandType.C_PUSH || commandType == Parser.CommandType.C_POP) {
-                    codeWriter.writePushPop(commandType, parser.arg1(), parser.arg2());
-                }
-                // Project 7 不需要处理 label, goto, if, function, return, call
-            }
-
-            // 关闭文件
-            parser.close();
-            codeWriter.close();
-
-        } catch (IOException e) {
-            System.err.println("Error: " + e.getMessage());
-            System.exit(1);
-        }
+        VMTranslatorⅡ.VMTranslator.main(args);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,117 @@
+package VMTranslatorⅡ;
+
+/**
+ * Backend 类：代码生成后端，即一组 CodeWriter 与 Optimizer 选项的组合。
+ * 项目 7 与项目 8 共用同一个翻译引擎，不同的需求通过选择后端实现：
+ * 1. standard：逐条命令直接翻译，与课程的参考实现一致。
+ * 2. size：ROM 最小。删除不可到达的函数、中间表示优化、call/return/比较运算使用共享例程、窥孔优化。
+ * 3. speed：周期最少。删除不可到达的函数、中间表示优化、栈顶缓存、窥孔优化，不超过 16 条命令的小函数内联到调用处，
+ *    其余调用内联展开 call/return 代码（不使用共享例程）。
+ * 4. debug：不做任何优化，每条命令的注释标出源文件名、行号和原始的 VM 命令。
+ * 在某个后端的基础上还可以用 with() 逐项打开其他选项，用 withInlining() 设置内联的函数大小上限。
+ */
+public final class Backend {
+    public static final Backend STANDARD = new Backend("standard", false, false, false, false, false, false, 0);
+    public static final Backend SIZE = new Backend("size", true, true, true, false, false, true, 0);
+    public static final Backend SPEED = new Backend("speed", true, false, true, true, false, true, 16);
+    public static final Backend DEBUG = new Backend("debug", false, false, false, false, true, false, 0);
+
+    private static final Backend[] VALUES = {STANDARD, SIZE, SPEED, DEBUG};
+
+    public final String name;
+    public final boolean peephole;
+    public final boolean trampolines;
+    public final boolean optimize;
+    public final boolean topOfStack;
+    public final boolean annotate;
+    // 是否删除从 Sys.init 不可到达的函数
+    public final boolean prune;
+    // 内联的函数命令数上限，0 表示不内联
+    public final int inline;
+
+    private Backend(String name, boolean peephole, boolean trampolines, boolean optimize, boolean topOfStack,
+                    boolean annotate, boolean prune, int inline) {
+        this.name = name;
+        this.peephole = peephole;
+        this.trampolines = trampolines;
+        this.optimize = optimize;
+        this.topOfStack = topOfStack;
+        this.annotate = annotate;
+        this.prune = prune;
+        this.inline = inline;
+    }
+
+    /**
+     * @return 全部预定义的后端，按 standard、size、speed、debug 的顺序
+     */
+    public static Backend[] values() {
+        return VALUES.clone();
+    }
+
+    /**
+     * 按名称查找预定义的后端。
+     * @param name 后端名称
+     * @return 对应的后端；名称未知时返回 null
+     */
+    public static Backend forName(String name) {
+        for (Backend backend : VALUES) {
+            if (backend.name.equals(name)) {
+                return backend;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 在本后端的基础上再打开一个选项。
+     * @param option 选项名：peephole、trampolines、optimize、tos、annotate 或 prune
+     * @return 新的后端；选项名未知时返回 null
+     */
+    public Backend with(String option) {
+        String combined = name + "+" + option;
+        switch (option) {
+            case "peephole":
+                return new Backend(combined, true, trampolines, optimize, topOfStack, annotate, prune, inline);
+            case "trampolines":
+                return new Backend(combined, peephole, true, optimize, topOfStack, annotate, prune, inline);
+            case "optimize":
+                return new Backend(combined, peephole, trampolines, true, topOfStack, annotate, prune, inline);
+            case "tos":
+                return new Backend(combined, peephole, trampolines, optimize, true, annotate, prune, inline);
+            case "annotate":
+                return new Backend(combined, peephole, trampolines, optimize, topOfStack, true, prune, inline);
+            case "prune":
+                return new Backend(combined, peephole, trampolines, optimize, topOfStack, annotate, true, inline);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 在本后端的基础上设置内联的函数大小上限。
+     * @param limit 被内联函数的命令数上限，0 表示不内联
+     * @return 新的后端
+     */
+    public Backend withInlining(int limit) {
+        return new Backend(name + "+inline=" + limit, peephole, trampolines, optimize, topOfStack, annotate, prune,
+                limit);
+    }
+
+    // 是否需要先把程序读入中间表示
+    public boolean usesIntermediateRepresentation() {
+        return optimize || prune || inline > 0;
+    }
+
+    // 把本后端的代码生成选项应用到 CodeWriter
+    public void configure(CodeWriter codeWriter) {
+        codeWriter.setPeephole(peephole);
+        codeWriter.setTrampolines(trampolines);
+        codeWriter.setTopOfStackCaching(topOfStack);
+        codeWriter.setAnnotations(annotate);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,84 @@
+package VMTranslatorⅡ;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * CallGraph 类：整个程序的调用图，用于删除从程序入口不可到达的函数。
+ * 入口：有引导代码时为 Sys.init，否则为第一个函数（程序从 ROM 地址 0 开始顺序执行），
+ * 以及文件开头不属于任何函数的代码。从入口出发沿 call 命令可以到达的函数都保留，其余的在生成代码之前删除，
+ * 例如目录中包含完整的 12/OS 时未用到的 Output、Screen 等例程。
+ */
+public class CallGraph {
+    private CallGraph() {
+    }
+
+    /**
+     * 删除不可到达的函数，并输出被删除的函数。
+     * @param program 程序中的全部函数，按文件和出现顺序排列
+     * @param bootstrap 是否带有调用 Sys.init 的引导代码
+     */
+    public static void removeUnreachable(List<VMFunction> program, boolean bootstrap) {
+        Map<String, VMFunction> functions = new HashMap<>();
+        for (VMFunction function : program) {
+            if (function.name() != null) {
+                functions.putIfAbsent(function.name(), function);
+            }
+        }
+
+        VMFunction entry = null;
+        if (bootstrap) {
+            entry = functions.get("Sys.init");
+            if (entry == null) {
+                return; // 没有 Sys.init，无法确定入口
+            }
+        }
+        List<VMFunction> work = new ArrayList<>();
+        for (VMFunction function : program) {
+            if (function.name() == null) {
+                work.add(function);
+            } else if (entry == null) {
+                entry = function;
+            }
+        }
+        if (entry != null) {
+            work.add(entry);
+        }
+
+        Set<VMFunction> reachable = new HashSet<>(work);
+        while (!work.isEmpty()) {
+            VMFunction function = work.remove(work.size() - 1);
+            for (int i = 0; i < function.count; i++) {
+                VMCommand command = function.commands[i];
+                if (command.type != Parser.CommandType.C_CALL) {
+                    continue;
+                }
+                VMFunction callee = functions.get(command.arg1);
+                if (callee != null && reachable.add(callee)) {
+                    work.add(callee);
+                }
+            }
+        }
+
+        List<VMFunction> removed = new ArrayList<>();
+        int commands = 0;
+        for (VMFunction function : program) {
+            if (!reachable.contains(function)) {
+                removed.add(function);
+                commands += function.count;
+            }
+        }
+        if (removed.isEmpty()) {
+            return;
+        }
+        program.removeIf(function -> !reachable.contains(function));
+        System.out.printf("VM 删除不可到达的函数: %d 个，命令 %d 条%n", removed.size(), commands);
+        for (VMFunction function : removed) {
+            System.out.printf("  %s (%s)%n", function.name(), function.fileName);
+        }
+    }
+}
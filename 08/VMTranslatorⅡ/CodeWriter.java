@@ -3,281 +3,751 @@ package VMTranslatorⅡ;
 import VMTranslatorⅡ.Parser;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
+/**
+ * CodeWriter 类：把 VM 命令翻译为 Hack 汇编代码。
+ * 命令和内存段使用 Parser 的整数编号分派，不比较字符串；每种 (命令, 内存段) 的指令序列是预先生成的模板，
+ * 只需填入下标或变量名那一行。汇编代码写入一大块字节缓冲区，写满后整块写入文件。
+ */
 public class CodeWriter implements AutoCloseable {
-    private PrintWriter writer;
+    // 输出缓冲区的大小，写满后整块写入文件
+    private static final int OUTPUT_BUFFER = 1 << 16;
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+    // 预先生成的 @0 - @511 和 @R0 - @R15，常用的下标和常数不必每次拼接
+    private static final String[] ADDRESSES = new String[512];
+    private static final String[] REGISTERS = new String[16];
+
+    static {
+        for (int i = 0; i < ADDRESSES.length; i++) {
+            ADDRESSES[i] = "@" + i;
+        }
+        for (int i = 0; i < REGISTERS.length; i++) {
+            REGISTERS[i] = "@R" + i;
+        }
+    }
+
+    // 指令模板，null 处填入操作数那一行（@下标、@变量名等）；按 Parser 的内存段编号索引
+    // 把段中的值读入 D
+    private static final String[][] LOAD = {
+            {null, "D=A"},
+            {"@LCL", "D=M", null, "A=D+A", "D=M"},
+            {"@ARG", "D=M", null, "A=D+A", "D=M"},
+            {"@THIS", "D=M", null, "A=D+A", "D=M"},
+            {"@THAT", "D=M", null, "A=D+A", "D=M"},
+            {null, "D=M"},
+            {null, "D=M"},
+            {null, "D=M"}
+    };
+    // 从栈中弹出到 local、argument、this、that 段：地址先存入 R13
+    private static final String[][] POP = {
+            null,
+            {"@LCL", "D=M", null, "D=D+A", "@R13", "M=D", "@SP", "AM=M-1", "D=M", "@R13", "A=M", "M=D"},
+            {"@ARG", "D=M", null, "D=D+A", "@R13", "M=D", "@SP", "AM=M-1", "D=M", "@R13", "A=M", "M=D"},
+            {"@THIS", "D=M", null, "D=D+A", "@R13", "M=D", "@SP", "AM=M-1", "D=M", "@R13", "A=M", "M=D"},
+            {"@THAT", "D=M", null, "D=D+A", "@R13", "M=D", "@SP", "AM=M-1", "D=M", "@R13", "A=M", "M=D"}
+    };
+    // 把 D 写入 static、temp 或 pointer 段
+    private static final String[] STORE = {null, "M=D"};
+    private static final String[] BASES = {null, "@LCL", "@ARG", "@THIS", "@THAT"};
+
+    // 按 Parser 的操作码索引：内存中的算术运算，比较运算需要标签，单独生成
+    private static final String[][] ARITHMETIC = {
+            {"@SP", "AM=M-1", "D=M", "A=A-1", "M=D+M"},
+            {"@SP", "AM=M-1", "D=M", "A=A-1", "M=M-D"},
+            {"@SP", "A=M-1", "M=-M"},
+            null,
+            null,
+            null,
+            {"@SP", "AM=M-1", "D=M", "A=A-1", "M=D&M"},
+            {"@SP", "AM=M-1", "D=M", "A=A-1", "M=D|M"},
+            {"@SP", "A=M-1", "M=!M"}
+    };
+    // 栈顶缓存模式下的算术运算：y 在 D 中，结果留在 D 中
+    private static final String[][] CACHED_ARITHMETIC = {
+            {"@SP", "AM=M-1", "D=D+M"},
+            {"@SP", "AM=M-1", "D=M-D"},
+            {"D=-D"},
+            null,
+            null,
+            null,
+            {"@SP", "AM=M-1", "D=D&M"},
+            {"@SP", "AM=M-1", "D=D|M"},
+            {"D=!D"}
+    };
+    // eq、gt、lt 的条件跳转
+    private static final String[] JUMPS = {"D;JEQ", "D;JGT", "D;JLT"};
+
+    // 输出目标：根 CodeWriter 写入文件，forFile() 创建的写入内存，由 append() 拼接
+    private OutputStream output;
+    private byte[] bytes;
+    private int size;
     private String fileName;
     private int labelCounter;
+    // 生成的内部标签的前缀：并行翻译时每个文件一个命名空间，避免不同文件的标签编号冲突
+    private String labelPrefix;
+    // 并行翻译时，每个文件的 CodeWriter 把代码写入内存，由 parent 按顺序拼接
+    private CodeWriter parent;
+    private List<String> report;
     private String currentFunction;
+    // 当前文件生成的汇编代码，文件结束时经窥孔优化后写出
+    private List<String> buffer;
+    private boolean peephole;
+    private String section;
+    // 栈顶缓存模式：栈顶的值保存在 D 中（cached 为 true 时尚未写入内存，SP 也不包含它），
+    // 只在标签、跳转、调用、返回之前和文件结束时写回内存
+    private boolean topOfStack;
+    private boolean cached;
+    // 共享例程模式：call、return 和比较运算跳转到全局唯一的 $$ 例程，而不是在调用处内联展开
+    private boolean trampolines;
+    private Map<String, Trampoline> trampolineStats;
+    // 调试注释模式：每条命令的注释标出源文件名、行号和原始的 VM 命令
+    private boolean annotate;
+    private int sourceLine;
+
+    // 一种共享例程的统计：调用处数量、调用处的 ROM 大小、等价的内联代码的 ROM 大小、例程自身的 ROM 大小
+    private static class Trampoline {
+        int sites;
+        int siteRom;
+        int inlineRom;
+        int routineRom;
+    }
 
     public CodeWriter(File output) throws IOException {
-        writer = new PrintWriter(new FileWriter(output));
+        this(new FileOutputStream(output));
+    }
+
+    private CodeWriter(OutputStream output) {
+        this.output = output;
+        bytes = new byte[output != null ? OUTPUT_BUFFER : 4096];
+        size = 0;
         labelCounter = 0;
+        labelPrefix = "";
+        report = new ArrayList<>();
         currentFunction = "";
+        buffer = new ArrayList<>();
+        peephole = false;
+        section = "Bootstrap";
+        topOfStack = false;
+        cached = false;
+        trampolines = false;
+        trampolineStats = new LinkedHashMap<>();
+        annotate = false;
+        sourceLine = 0;
+    }
+
+    // 启用栈顶缓存：连续的运算之间栈顶留在 D 中，不经过内存
+    public void setTopOfStackCaching(boolean topOfStack) {
+        this.topOfStack = topOfStack;
+    }
+
+    // 启用窥孔优化：每个文件结束时优化其汇编代码，并报告节省的 ROM
+    public void setPeephole(boolean peephole) {
+        this.peephole = peephole;
     }
 
-    public void setFileName(String fileName) {
+    // 启用共享例程：以少量周期换取大幅缩小 ROM，结束时报告两者的变化
+    public void setTrampolines(boolean trampolines) {
+        this.trampolines = trampolines;
+    }
+
+    // 启用调试注释：注释中标出每条命令的源文件位置，便于在 CPU 模拟器中对照 VM 代码单步调试
+    public void setAnnotations(boolean annotate) {
+        this.annotate = annotate;
+    }
+
+    // 设置下一条命令在当前 .vm 文件中的行号，0 表示未知
+    public void setSourceLine(int sourceLine) {
+        this.sourceLine = sourceLine;
+    }
+
+    // 为一个文件创建独立的 CodeWriter，代码写入内存，选项与本对象相同；完成后 close() 并交给 append()
+    public CodeWriter forFile(String fileName) throws IOException {
+        CodeWriter part = new CodeWriter((OutputStream) null);
+        part.parent = this;
+        part.peephole = peephole;
+        part.trampolines = trampolines;
+        part.topOfStack = topOfStack;
+        part.annotate = annotate;
+        part.labelPrefix = fileName.replace(".vm", "") + ".";
+        part.setFileName(fileName);
+        return part;
+    }
+
+    // 把 forFile() 创建并已关闭的 CodeWriter 的代码和统计追加到本对象，按调用顺序拼接
+    public void append(CodeWriter part) throws IOException {
+        spill();
+        flush();
+        write(part.bytes, part.size);
+        for (String line : part.report) {
+            report(line);
+        }
+        for (Map.Entry<String, Trampoline> entry : part.trampolineStats.entrySet()) {
+            Trampoline stats = trampolineStats.computeIfAbsent(entry.getKey(), k -> new Trampoline());
+            stats.sites += entry.getValue().sites;
+            stats.siteRom += entry.getValue().siteRom;
+            stats.inlineRom += entry.getValue().inlineRom;
+        }
+    }
+
+    public void setFileName(String fileName) throws IOException {
+        spill();
+        flush();
         this.fileName = fileName.replace(".vm", "");
+        section = fileName;
+        sourceLine = 0;
     }
 
     public void writeBootstrap() {
         writeComment("Bootstrap code");
-        writer.println("@256");
-        writer.println("D=A");
-        writer.println("@SP");
-        writer.println("M=D"); // SP = 256
+        emit("@256");
+        emit("D=A");
+        emit("@SP");
+        emit("M=D"); // SP = 256
         writeCall("Sys.init", 0);
     }
 
-    public void writeArithmetic(String command) {
-        writeComment(command);
-        if (command.equals("add") || command.equals("sub") || command.equals("and") || command.equals("or")) {
-            writeBinaryOperation(command);
-        } else if (command.equals("neg") || command.equals("not")) {
-            writeUnaryOperation(command);
-        } else if (command.equals("eq") || command.equals("gt") || command.equals("lt")) {
+    public void writeArithmetic(int command) {
+        writeComment(Parser.OPCODE_NAMES[command]);
+        boolean comparison = command == Parser.EQ || command == Parser.GT || command == Parser.LT;
+        if (topOfStack && !(comparison && trampolines)) {
+            writeCachedArithmetic(command);
+            return;
+        }
+        spill(); // 比较运算使用共享例程时，操作数必须都在内存中
+        if (comparison) {
             writeComparison(command);
+        } else {
+            emit(ARITHMETIC[command], null);
+        }
+    }
+
+    private void writeComparison(int command) {
+        if (trampolines) {
+            // 调用处：D = 返回地址，跳转到 $$EQ / $$GT / $$LT
+            String name = Parser.OPCODE_NAMES[command];
+            String returnAddress = "$$" + name.toUpperCase() + "$ret." + nextLabelId();
+            writeTrampolineSite(name, () -> {
+                emit("@" + returnAddress);
+                emit("D=A");
+                emit("@$$" + name.toUpperCase());
+                emit("0;JMP");
+                emit("(" + returnAddress + ")");
+            }, () -> writeInlineComparison(command));
+            return;
         }
+        writeInlineComparison(command);
+    }
+
+    private void writeInlineComparison(int command) {
+        String id = nextLabelId();
+        writeComparisonBody(command, "TRUE_" + id, "END_" + id);
     }
 
-    private void writeBinaryOperation(String command) {
-        writer.println("@SP");
-        writer.println("AM=M-1");
-        writer.println("D=M"); // D = y
-        writer.println("A=A-1"); // Point to x
-        if (command.equals("add")) {
-            writer.println("M=D+M"); // 修正为 D+M
-        } else if (command.equals("sub")) {
-            writer.println("M=M-D");
-        } else if (command.equals("and")) {
-            writer.println("M=M&D");
-        } else if (command.equals("or")) {
-            writer.println("M=M|D");
-        }
-    }
-
-    private void writeUnaryOperation(String command) {
-        writer.println("@SP");
-        writer.println("A=M-1");
-        if (command.equals("neg")) {
-            writer.println("M=-M");
-        } else if (command.equals("not")) {
-            writer.println("M=!M");
-        }
-    }
-
-    private void writeComparison(String command) {
-        String labelTrue = "TRUE_" + labelCounter;
-        String labelEnd = "END_" + labelCounter++;
-        writer.println("@SP");
-        writer.println("AM=M-1");
-        writer.println("D=M"); // D = y
-        writer.println("A=A-1"); // Point to x
-        writer.println("D=M-D"); // x - y
-        writer.println("@" + labelTrue);
-        if (command.equals("eq")) {
-            writer.println("D;JEQ");
-        } else if (command.equals("gt")) {
-            writer.println("D;JGT");
-        } else if (command.equals("lt")) {
-            writer.println("D;JLT");
-        }
-        writer.println("@SP");
-        writer.println("A=M-1");
-        writer.println("M=0"); // False
-        writer.println("@" + labelEnd);
-        writer.println("0;JMP");
-        writer.println("(" + labelTrue + ")");
-        writer.println("@SP");
-        writer.println("A=M-1");
-        writer.println("M=-1"); // True
-        writer.println("(" + labelEnd + ")");
-    }
-
-    public void writePushPop(Parser.CommandType command, String segment, int index) {
-        writeComment(command + " " + segment + " " + index);
+    private void writeComparisonBody(int command, String labelTrue, String labelEnd) {
+        emit("@SP");
+        emit("AM=M-1");
+        emit("D=M"); // D = y
+        emit("A=A-1"); // Point to x
+        emit("D=M-D"); // x - y
+        emit("@" + labelTrue);
+        emit(JUMPS[command - Parser.EQ]);
+        emit("@SP");
+        emit("A=M-1");
+        emit("M=0"); // False
+        emit("@" + labelEnd);
+        emit("0;JMP");
+        emit("(" + labelTrue + ")");
+        emit("@SP");
+        emit("A=M-1");
+        emit("M=-1"); // True
+        emit("(" + labelEnd + ")");
+    }
+
+    public void writePushPop(Parser.CommandType command, int segment, int index) {
+        String name = !annotate ? command.toString() : command == Parser.CommandType.C_PUSH ? "push" : "pop";
+        writeComment(name + " " + Parser.SEGMENT_NAMES[segment] + " " + index);
+        if (topOfStack) {
+            writeCachedPushPop(command, segment, index);
+            return;
+        }
         if (command == Parser.CommandType.C_PUSH) {
-            if (segment.equals("constant")) {
-                writer.println("@" + index);
-                writer.println("D=A");
-                pushDToStack();
-            } else if (segment.equals("local") || segment.equals("argument") || segment.equals("this") || segment.equals("that")) {
-                writePushSegment(segment, index);
-            } else if (segment.equals("static")) {
-                writer.println("@" + fileName + "." + index);
-                writer.println("D=M");
-                pushDToStack();
-            } else if (segment.equals("temp")) {
-                writer.println("@5");
-                writer.println("D=A");
-                writer.println("@" + index);
-                writer.println("A=D+A");
-                writer.println("D=M");
-                pushDToStack();
-            } else if (segment.equals("pointer")) {
-                writer.println(index == 0 ? "@THIS" : "@THAT");
-                writer.println("D=M");
-                pushDToStack();
-            }
+            loadToD(segment, index);
+            pushDToStack();
         } else if (command == Parser.CommandType.C_POP) {
-            if (segment.equals("local") || segment.equals("argument") || segment.equals("this") || segment.equals("that")) {
-                writePopSegment(segment, index);
-            } else if (segment.equals("static")) {
-                popFromStackToD();
-                writer.println("@" + fileName + "." + index);
-                writer.println("M=D");
-            } else if (segment.equals("temp")) {
+            if (isBase(segment)) {
+                emit(POP[segment], operand(segment, index));
+            } else {
                 popFromStackToD();
-                writer.println("@5");
-                writer.println("D=A");
-                writer.println("@" + index);
-                writer.println("A=D+A");
-                writer.println("M=D");
-            } else if (segment.equals("pointer")) {
-                popFromStackToD();
-                writer.println(index == 0 ? "@THIS" : "@THAT");
-                writer.println("M=D");
+                emit(STORE, operand(segment, index));
             }
         }
     }
 
-    private void writePushSegment(String segment, int index) {
-        String seg = segment.equals("local") ? "LCL" : segment.equals("argument") ? "ARG" : segment.equals("this") ? "THIS" : "THAT";
-        writer.println("@" + seg);
-        writer.println("D=M");
-        writer.println("@" + index);
-        writer.println("A=D+A");
-        writer.println("D=M");
-        pushDToStack();
+    // 把段中的值读入 D
+    private void loadToD(int segment, int index) {
+        if (segment == Parser.CONSTANT && index < 0) {
+            if (index > -32768) {
+                emit("@" + -index); // 负常数（来自常量折叠）
+                emit("D=-A");
+            } else {
+                emit("@32767");
+                emit("D=-A");
+                emit("D=D-1");
+            }
+            return;
+        }
+        emit(LOAD[segment], operand(segment, index));
     }
 
-    private void writePopSegment(String segment, int index) {
-        String seg = segment.equals("local") ? "LCL" : segment.equals("argument") ? "ARG" : segment.equals("this") ? "THIS" : "THAT";
-        writer.println("@" + seg);
-        writer.println("D=M");
-        writer.println("@" + index);
-        writer.println("D=D+A");
-        writer.println("@R13");
-        writer.println("M=D"); // Store address in R13
-        popFromStackToD();
-        writer.println("@R13");
-        writer.println("A=M");
-        writer.println("M=D");
+    // 模板中的操作数那一行：static 为文件名.下标，temp 段固定位于 R5-R12，直接寻址
+    private String operand(int segment, int index) {
+        switch (segment) {
+            case Parser.STATIC:
+                return "@" + fileName + "." + index;
+            case Parser.TEMP:
+                return 5 + index < REGISTERS.length ? REGISTERS[5 + index] : "@R" + (5 + index);
+            case Parser.POINTER:
+                return index == 0 ? "@THIS" : "@THAT";
+            default:
+                return index < ADDRESSES.length ? ADDRESSES[index] : "@" + index;
+        }
+    }
+
+    // local、argument、this、that 段通过基址指针间接寻址
+    private static boolean isBase(int segment) {
+        return segment >= Parser.LOCAL && segment <= Parser.THAT;
+    }
+
+    // 栈顶缓存模式下的 push/pop：push 先写回旧的栈顶，再把新值读入 D；pop 直接使用 D 中的栈顶
+    private void writeCachedPushPop(Parser.CommandType command, int segment, int index) {
+        if (command == Parser.CommandType.C_PUSH) {
+            spill();
+            loadToD(segment, index);
+            cached = true;
+            return;
+        }
+        if (!cached) {
+            popFromStackToD();
+        }
+        cached = false;
+        if (!isBase(segment)) {
+            emit(STORE, operand(segment, index));
+        } else if (index <= 7) {
+            // 小下标：逐次加一得到地址，不破坏 D
+            emit(BASES[segment]);
+            emit("A=M");
+            for (int i = 0; i < index; i++) {
+                emit("A=A+1");
+            }
+            emit("M=D");
+        } else {
+            emit("@R13");
+            emit("M=D"); // R13 = 值
+            emit(BASES[segment]);
+            emit("D=M");
+            emit(operand(segment, index));
+            emit("D=D+A");
+            emit("@R14");
+            emit("M=D"); // R14 = 地址
+            emit("@R13");
+            emit("D=M");
+            emit("@R14");
+            emit("A=M");
+            emit("M=D");
+        }
+    }
+
+    // 栈顶缓存模式下的算术运算：操作数 y 在 D 中，x 在内存栈顶，结果留在 D 中
+    private void writeCachedArithmetic(int command) {
+        if (!cached) {
+            popFromStackToD();
+        }
+        if (CACHED_ARITHMETIC[command] != null) {
+            emit(CACHED_ARITHMETIC[command], null);
+        } else {
+            String id = nextLabelId();
+            String labelTrue = "TRUE_" + id;
+            String labelEnd = "END_" + id;
+            emit("@SP");
+            emit("AM=M-1"); // 弹出 x，A 指向 x
+            emit("D=M-D"); // x - y
+            emit("@" + labelTrue);
+            emit(JUMPS[command - Parser.EQ]);
+            emit("D=0"); // False
+            emit("@" + labelEnd);
+            emit("0;JMP");
+            emit("(" + labelTrue + ")");
+            emit("D=-1"); // True
+            emit("(" + labelEnd + ")");
+        }
+        cached = true;
+    }
+
+    // 把缓存在 D 中的栈顶写回内存栈
+    private void spill() {
+        if (cached) {
+            emit("@SP");
+            emit("M=M+1");
+            emit("A=M-1");
+            emit("M=D");
+            cached = false;
+        }
     }
 
     private void pushDToStack() {
-        writer.println("@SP");
-        writer.println("A=M");
-        writer.println("M=D");
-        writer.println("@SP");
-        writer.println("M=M+1");
+        emit("@SP");
+        emit("A=M");
+        emit("M=D");
+        emit("@SP");
+        emit("M=M+1");
     }
 
     private void popFromStackToD() {
-        writer.println("@SP");
-        writer.println("AM=M-1");
-        writer.println("D=M");
+        emit("@SP");
+        emit("AM=M-1");
+        emit("D=M");
     }
 
     public void writeLabel(String label) {
         writeComment("label " + label);
-        writer.println("(" + currentFunction + "$" + label + ")");
+        spill();
+        emit("(" + currentFunction + "$" + label + ")");
     }
 
     public void writeGoto(String label) {
         writeComment("goto " + label);
-        writer.println("@" + currentFunction + "$" + label);
-        writer.println("0;JMP");
+        spill();
+        emit("@" + currentFunction + "$" + label);
+        emit("0;JMP");
     }
 
     public void writeIf(String label) {
         writeComment("if-goto " + label);
-        popFromStackToD();
-        writer.println("@" + currentFunction + "$" + label);
-        writer.println("D;JNE");
+        if (cached) {
+            cached = false; // 条件已在 D 中
+        } else {
+            popFromStackToD();
+        }
+        emit("@" + currentFunction + "$" + label);
+        emit("D;JNE");
     }
 
     public void writeFunction(String functionName, int nVars) {
         writeComment("function " + functionName + " " + nVars);
+        spill();
         currentFunction = functionName;
-        writer.println("(" + functionName + ")");
+        emit("(" + functionName + ")");
         for (int i = 0; i < nVars; i++) {
-            writer.println("@0");
-            writer.println("D=A");
+            emit("@0");
+            emit("D=A");
             pushDToStack();
         }
     }
 
     public void writeCall(String functionName, int nArgs) {
         writeComment("call " + functionName + " " + nArgs);
-        String returnAddress = functionName + "$ret." + labelCounter++;
-        writer.println("@" + returnAddress);
-        writer.println("D=A");
+        spill();
+        String returnAddress = functionName + "$ret." + nextLabelId();
+        if (trampolines) {
+            // 调用处：R13 = nArgs，R14 = 被调函数地址，D = 返回地址，跳转到 $$CALL
+            writeTrampolineSite("call", () -> {
+                emit("@" + nArgs);
+                emit("D=A");
+                emit("@R13");
+                emit("M=D");
+                emit("@" + functionName);
+                emit("D=A");
+                emit("@R14");
+                emit("M=D");
+                emit("@" + returnAddress);
+                emit("D=A");
+                emit("@$$CALL");
+                emit("0;JMP");
+                emit("(" + returnAddress + ")");
+            }, () -> writeCallBody(functionName, nArgs, returnAddress));
+            return;
+        }
+        writeCallBody(functionName, nArgs, returnAddress);
+    }
+
+    private void writeCallBody(String functionName, int nArgs, String returnAddress) {
+        emit("@" + returnAddress);
+        emit("D=A");
         pushDToStack();
         for (String seg : new String[]{"LCL", "ARG", "THIS", "THAT"}) {
-            writer.println("@" + seg);
-            writer.println("D=M");
+            emit("@" + seg);
+            emit("D=M");
             pushDToStack();
         }
-        writer.println("@SP");
-        writer.println("D=M");
-        writer.println("@5");
-        writer.println("D=D-A");
-        writer.println("@" + nArgs);
-        writer.println("D=D-A");
-        writer.println("@ARG");
-        writer.println("M=D");
-        writer.println("@SP");
-        writer.println("D=M");
-        writer.println("@LCL");
-        writer.println("M=D");
-        writer.println("@" + functionName);
-        writer.println("0;JMP");
-        writer.println("(" + returnAddress + ")");
+        emit("@SP");
+        emit("D=M");
+        emit("@5");
+        emit("D=D-A");
+        emit("@" + nArgs);
+        emit("D=D-A");
+        emit("@ARG");
+        emit("M=D");
+        emit("@SP");
+        emit("D=M");
+        emit("@LCL");
+        emit("M=D");
+        emit("@" + functionName);
+        emit("0;JMP");
+        emit("(" + returnAddress + ")");
     }
 
     public void writeReturn() {
         writeComment("return");
-        writer.println("@LCL");
-        writer.println("D=M");
-        writer.println("@R13");
-        writer.println("M=D"); // endFrame
-        writer.println("@5");
-        writer.println("A=D-A");
-        writer.println("D=M");
-        writer.println("@R14");
-        writer.println("M=D"); // retAddr
+        spill();
+        if (trampolines) {
+            writeTrampolineSite("return", () -> {
+                emit("@$$RETURN");
+                emit("0;JMP");
+            }, this::writeReturnBody);
+            return;
+        }
+        writeReturnBody();
+    }
+
+    private void writeReturnBody() {
+        emit("@LCL");
+        emit("D=M");
+        emit("@R13");
+        emit("M=D"); // endFrame
+        emit("@5");
+        emit("A=D-A");
+        emit("D=M");
+        emit("@R14");
+        emit("M=D"); // retAddr
         popFromStackToD();
-        writer.println("@ARG");
-        writer.println("A=M");
-        writer.println("M=D");
-        writer.println("@ARG");
-        writer.println("D=M+1");
-        writer.println("@SP");
-        writer.println("M=D");
+        emit("@ARG");
+        emit("A=M");
+        emit("M=D");
+        emit("@ARG");
+        emit("D=M+1");
+        emit("@SP");
+        emit("M=D");
         for (int i = 1; i <= 4; i++) {
             String seg = i == 1 ? "THAT" : i == 2 ? "THIS" : i == 3 ? "ARG" : "LCL";
-            writer.println("@R13");
-            writer.println("D=M");
-            writer.println("@" + i);
-            writer.println("A=D-A");
-            writer.println("D=M");
-            writer.println("@" + seg);
-            writer.println("M=D");
+            emit("@R13");
+            emit("D=M");
+            emit("@" + i);
+            emit("A=D-A");
+            emit("D=M");
+            emit("@" + seg);
+            emit("M=D");
         }
-        writer.println("@R14");
-        writer.println("A=M");
-        writer.println("0;JMP");
+        emit("@R14");
+        emit("A=M");
+        emit("0;JMP");
+    }
+
+    // 写出一处共享例程的调用，并统计调用处与等价内联代码的 ROM 大小
+    private void writeTrampolineSite(String kind, Runnable site, Runnable inline) {
+        Trampoline stats = trampolineStats.computeIfAbsent(kind, k -> new Trampoline());
+        stats.sites++;
+        stats.inlineRom += measure(inline);
+        int start = buffer.size();
+        site.run();
+        stats.siteRom += Peephole.countInstructions(buffer.subList(start, buffer.size()));
+    }
+
+    // 辅助方法：统计一段代码生成的指令数，生成的代码被丢弃，标签计数器复原
+    private int measure(Runnable code) {
+        List<String> saved = buffer;
+        int savedCounter = labelCounter;
+        buffer = new ArrayList<>();
+        code.run();
+        int size = Peephole.countInstructions(buffer);
+        buffer = saved;
+        labelCounter = savedCounter;
+        return size;
+    }
+
+    // 在程序末尾写出用到的共享例程。例程之前是一个死循环，防止没有引导代码的程序执行完后落入例程
+    private void writeTrampolines() {
+        section = "Trampolines";
+        writeComment("shared routines");
+        emit("($$HALT)");
+        emit("@$$HALT");
+        emit("0;JMP");
+        for (Map.Entry<String, Trampoline> entry : trampolineStats.entrySet()) {
+            String kind = entry.getKey();
+            int start = buffer.size();
+            if (kind.equals("call")) {
+                writeCallRoutine();
+            } else if (kind.equals("return")) {
+                emit("($$RETURN)");
+                writeReturnBody();
+            } else {
+                String name = "$$" + kind.toUpperCase();
+                emit("(" + name + ")");
+                emit("@R15");
+                emit("M=D"); // 保存返回地址
+                writeComparisonBody(Parser.opcodeOf(Parser.CommandType.C_ARITHMETIC, kind), name + "$TRUE", name + "$END");
+                emit("@R15");
+                emit("A=M");
+                emit("0;JMP");
+            }
+            entry.getValue().routineRom = Peephole.countInstructions(buffer.subList(start, buffer.size()));
+        }
+    }
+
+    // $$CALL：D = 返回地址，R13 = nArgs，R14 = 被调函数地址
+    private void writeCallRoutine() {
+        emit("($$CALL)");
+        pushDToStack(); // push returnAddress
+        for (String seg : new String[]{"LCL", "ARG", "THIS", "THAT"}) {
+            emit("@" + seg);
+            emit("D=M");
+            pushDToStack();
+        }
+        emit("@SP");
+        emit("D=M");
+        emit("@5");
+        emit("D=D-A");
+        emit("@R13");
+        emit("D=D-M");
+        emit("@ARG");
+        emit("M=D"); // ARG = SP - 5 - nArgs
+        emit("@SP");
+        emit("D=M");
+        emit("@LCL");
+        emit("M=D"); // LCL = SP
+        emit("@R14");
+        emit("A=M");
+        emit("0;JMP");
+    }
+
+    // 报告共享例程带来的 ROM 与周期变化
+    private void reportTrampolines() {
+        int saved = -2; // $$HALT 死循环占用的 ROM
+        for (Map.Entry<String, Trampoline> entry : trampolineStats.entrySet()) {
+            Trampoline stats = entry.getValue();
+            int rom = stats.siteRom + stats.routineRom;
+            // 例程包含与内联代码相同的执行路径，每次执行多出的周期即调用处和例程的跳入、跳回指令
+            int cycles = (stats.siteRom - stats.inlineRom) / stats.sites + stats.routineRom;
+            saved += stats.inlineRom - rom;
+            report(String.format("%s: %d 处，ROM %d -> %d (调用处 %d + 例程 %d)，每次多 %d 个周期",
+                    entry.getKey(), stats.sites, stats.inlineRom, rom, stats.siteRom, stats.routineRom, cycles));
+        }
+        report("共享例程共节省 ROM " + saved);
+    }
+
+    // 输出一行报告；并行翻译的文件先暂存，由 append() 按文件顺序输出
+    private void report(String line) {
+        if (parent != null) {
+            report.add(line);
+        } else {
+            System.out.println(line);
+        }
+    }
+
+    // 下一个内部标签编号，带有文件命名空间前缀
+    private String nextLabelId() {
+        return labelPrefix + labelCounter++;
     }
 
     private void writeComment(String comment) {
-        writer.println("// " + comment);
+        if (annotate && sourceLine > 0) {
+            emit("// " + section + ":" + sourceLine + ": " + comment);
+        } else {
+            emit("// " + comment);
+        }
+    }
+
+    private void emit(String line) {
+        buffer.add(line);
+    }
+
+    // 按模板生成指令，null 处填入 operand
+    private void emit(String[] template, String operand) {
+        for (String line : template) {
+            buffer.add(line != null ? line : operand);
+        }
+    }
+
+    // 写出缓冲的汇编代码；启用窥孔优化时先优化，并报告本段代码的 ROM 大小变化
+    private void flush() throws IOException {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        List<String> code = buffer;
+        if (peephole) {
+            code = Peephole.optimize(buffer);
+            int before = Peephole.countInstructions(buffer);
+            int after = Peephole.countInstructions(code);
+            // 只报告 ROM：节省的周期取决于每处代码的执行次数，静态统计无从得知，实际周期数由 Regression 在 Emulator 上测量
+            report(String.format("%s: ROM %d -> %d (-%d, -%.1f%%)",
+                    section, before, after, before - after, 100.0 * (before - after) / before));
+        }
+        for (String line : code) {
+            print(line);
+        }
+        buffer = new ArrayList<>();
+    }
+
+    // 把一行汇编代码编码后写入输出缓冲区；汇编代码几乎都是 ASCII，逐字符复制
+    private void print(String line) throws IOException {
+        int length = line.length();
+        reserve(length + LINE_SEPARATOR.length);
+        for (int i = 0; i < length; i++) {
+            char c = line.charAt(i);
+            if (c >= 0x80) {
+                // 文件名等含有非 ASCII 字符：整行按 UTF-8 编码
+                size -= i;
+                byte[] encoded = line.getBytes(StandardCharsets.UTF_8);
+                write(encoded, encoded.length);
+                reserve(LINE_SEPARATOR.length);
+                break;
+            }
+            bytes[size++] = (byte) c;
+        }
+        for (byte b : LINE_SEPARATOR) {
+            bytes[size++] = b;
+        }
+    }
+
+    private void write(byte[] data, int length) throws IOException {
+        reserve(length);
+        System.arraycopy(data, 0, bytes, size, length);
+        size += length;
+    }
+
+    // 确保输出缓冲区还能容纳 length 个字节：写入文件的缓冲区满时整块写出，写入内存的缓冲区满时扩容
+    private void reserve(int length) throws IOException {
+        if (size + length <= bytes.length) {
+            return;
+        }
+        if (output != null) {
+            output.write(bytes, 0, size);
+            size = 0;
+        }
+        if (size + length > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + length));
+        }
     }
 
     @Override
-    public void close() {
-        if (writer != null) {
-            writer.close();
+    public void close() throws IOException {
+        if (bytes != null) {
+            spill();
+            flush();
+            if (trampolines && !trampolineStats.isEmpty() && parent == null) {
+                writeTrampolines();
+                flush();
+                reportTrampolines();
+            }
+            if (output != null) {
+                output.write(bytes, 0, size);
+                output.close();
+            }
         }
     }
 }
\ No newline at end of file
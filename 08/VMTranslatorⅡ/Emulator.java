@@ -0,0 +1,245 @@
+package VMTranslatorⅡ;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Emulator 类：直接执行 Hack 汇编程序的 CPU 模拟器，供 Regression 运行测试脚本并统计周期数。
+ * 标签和变量按 Hack 语言规范分配地址（变量从 16 开始），不需要先汇编为 .hack 文件。
+ * 每条指令执行一个周期；程序跳转到紧邻的 @ 指令形成的死循环（即 (END) @END 0;JMP）时视为结束。
+ * 只接受 Hack 汇编器（项目 6 的 Code 类）认可的 dest、comp、jump 助记符，
+ * 交换了操作数的写法（如 M&D、A+D）虽然含义明确，汇编器却会拒绝，这里同样报错，使 Regression 能发现这类代码。
+ */
+public class Emulator {
+    private static final int RAM_SIZE = 32768;
+    // 汇编器认可的 dest 和 jump 助记符（DM、ADM 是汇编器兼容的写法）
+    private static final Set<String> DESTS = new HashSet<>(Arrays.asList(
+            "", "M", "D", "MD", "A", "AM", "AD", "AMD", "DM", "ADM"));
+    private static final Set<String> JUMPS = new HashSet<>(Arrays.asList(
+            "", "JGT", "JEQ", "JGE", "JLT", "JNE", "JLE", "JMP"));
+
+    // 第 i 条指令：A 指令的值保存在 values 中，C 指令的 comp、dest、jump 分别保存，A 指令的 comp 为 null
+    private final int[] values;
+    private final String[] comps;
+    private final String[] dests;
+    private final String[] jumps;
+    private final int[] ram;
+
+    /**
+     * 构造函数：解析汇编代码，解析标签和变量的地址。
+     * @param lines 汇编代码，每行一条指令、标签或注释
+     * @throws IllegalArgumentException 如果遇到汇编器不接受的 C 指令
+     */
+    public Emulator(List<String> lines) {
+        Map<String, Integer> symbols = new HashMap<>();
+        for (int i = 0; i <= 15; i++) {
+            symbols.put("R" + i, i);
+        }
+        symbols.put("SP", 0);
+        symbols.put("LCL", 1);
+        symbols.put("ARG", 2);
+        symbols.put("THIS", 3);
+        symbols.put("THAT", 4);
+        symbols.put("SCREEN", 16384);
+        symbols.put("KBD", 24576);
+
+        // 第一遍：记录标签地址
+        List<String> instructions = new ArrayList<>();
+        for (String line : lines) {
+            int comment = line.indexOf("//");
+            String instruction = (comment >= 0 ? line.substring(0, comment) : line).trim();
+            if (instruction.isEmpty()) {
+                continue;
+            }
+            if (instruction.startsWith("(")) {
+                symbols.put(instruction.substring(1, instruction.length() - 1), instructions.size());
+            } else {
+                instructions.add(instruction);
+            }
+        }
+
+        // 第二遍：解析指令，为变量分配地址
+        int size = instructions.size();
+        values = new int[size];
+        comps = new String[size];
+        dests = new String[size];
+        jumps = new String[size];
+        int nextVariable = 16;
+        for (int i = 0; i < size; i++) {
+            String instruction = instructions.get(i);
+            if (instruction.startsWith("@")) {
+                String symbol = instruction.substring(1);
+                if (Character.isDigit(symbol.charAt(0))) {
+                    values[i] = Integer.parseInt(symbol);
+                } else {
+                    Integer address = symbols.get(symbol);
+                    if (address == null) {
+                        address = nextVariable++;
+                        symbols.put(symbol, address);
+                    }
+                    values[i] = address;
+                }
+                continue;
+            }
+            int equals = instruction.indexOf('=');
+            int semicolon = instruction.indexOf(';');
+            dests[i] = equals < 0 ? "" : instruction.substring(0, equals);
+            comps[i] = instruction.substring(equals + 1, semicolon < 0 ? instruction.length() : semicolon);
+            jumps[i] = semicolon < 0 ? "" : instruction.substring(semicolon + 1);
+            compute(comps[i], 0, 0, 0); // 提前检查 comp 是否有效
+            if (!DESTS.contains(dests[i]) || !JUMPS.contains(jumps[i])) {
+                throw new IllegalArgumentException("Invalid instruction: " + instruction);
+            }
+        }
+        ram = new int[RAM_SIZE];
+    }
+
+    /**
+     * @return 程序的指令数，即占用的 ROM 大小
+     */
+    public int romSize() {
+        return values.length;
+    }
+
+    public void set(int address, int value) {
+        ram[address] = (short) value;
+    }
+
+    public int get(int address) {
+        return ram[address];
+    }
+
+    /**
+     * 从地址 0 开始执行程序，直到结束或达到周期上限。
+     * @param maxCycles 最多执行的周期数
+     * @return 实际执行的周期数
+     */
+    public int run(int maxCycles) {
+        int a = 0;
+        int d = 0;
+        int pc = 0;
+        int cycles = 0;
+        while (cycles < maxCycles && pc < values.length) {
+            cycles++;
+            if (comps[pc] == null) {
+                a = values[pc];
+                pc++;
+                continue;
+            }
+            int address = a & (RAM_SIZE - 1);
+            int result = (short) compute(comps[pc], a, d, ram[address]);
+            String dest = dests[pc];
+            String jump = jumps[pc];
+            if (dest.indexOf('M') >= 0) {
+                ram[address] = result;
+            }
+            if (dest.indexOf('A') >= 0) {
+                a = result;
+            }
+            if (dest.indexOf('D') >= 0) {
+                d = result;
+            }
+            if (jumps(jump, result)) {
+                int target = address;
+                if (jump.equals("JMP") && target == pc - 1 && comps[target] == null) {
+                    return cycles; // 死循环：程序结束
+                }
+                pc = target;
+            } else {
+                pc++;
+            }
+        }
+        return cycles;
+    }
+
+    // 辅助方法：计算 comp，结果尚未截断为 16 位
+    private static int compute(String comp, int a, int d, int m) {
+        switch (comp) {
+            case "0":
+                return 0;
+            case "1":
+                return 1;
+            case "-1":
+                return -1;
+            case "D":
+                return d;
+            case "A":
+                return a;
+            case "M":
+                return m;
+            case "!D":
+                return ~d;
+            case "!A":
+                return ~a;
+            case "!M":
+                return ~m;
+            case "-D":
+                return -d;
+            case "-A":
+                return -a;
+            case "-M":
+                return -m;
+            case "D+1":
+                return d + 1;
+            case "A+1":
+                return a + 1;
+            case "M+1":
+                return m + 1;
+            case "D-1":
+                return d - 1;
+            case "A-1":
+                return a - 1;
+            case "M-1":
+                return m - 1;
+            case "D+A":
+                return d + a;
+            case "D+M":
+                return d + m;
+            case "D-A":
+                return d - a;
+            case "D-M":
+                return d - m;
+            case "A-D":
+                return a - d;
+            case "M-D":
+                return m - d;
+            case "D&A":
+                return d & a;
+            case "D&M":
+                return d & m;
+            case "D|A":
+                return d | a;
+            case "D|M":
+                return d | m;
+            default:
+                throw new IllegalArgumentException("Unknown comp: " + comp);
+        }
+    }
+
+    // 辅助方法：根据计算结果判断是否跳转
+    private static boolean jumps(String jump, int result) {
+        switch (jump) {
+            case "JGT":
+                return result > 0;
+            case "JEQ":
+                return result == 0;
+            case "JGE":
+                return result >= 0;
+            case "JLT":
+                return result < 0;
+            case "JNE":
+                return result != 0;
+            case "JLE":
+                return result <= 0;
+            case "JMP":
+                return true;
+            default:
+                return false;
+        }
+    }
+}
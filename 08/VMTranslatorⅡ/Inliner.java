@@ -0,0 +1,263 @@
+package VMTranslatorⅡ;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Inliner 类：在中间表示上把小函数内联展开到调用处，省去 call/return 保存和恢复栈帧的开销。
+ * 被内联的函数必须满足：
+ * 1. 是叶函数（不调用其他函数），命令数（不含 function 命令）不超过给定的上限；
+ * 2. 只访问调用处传入的参数和自己声明的局部变量；
+ * 3. 每个 return 处栈中恰好只有返回值（按基本块分析栈深度）；
+ * 4. 使用 static 段时只内联到同一个文件中的调用者（static 段的符号以文件名为前缀）。
+ * 调用处的参数和被调函数的局部变量改为调用者栈帧中新增的局部变量，同一调用者的各调用处共用这些局部变量。
+ * 被调函数修改 pointer 段时，先把调用者的 THIS/THAT 保存到新增的局部变量中，返回后再恢复。
+ * 函数体中的标签加上调用处编号作为前缀，非末尾的 return 改为跳到展开代码的末尾。
+ * 内联后调用者可能成为叶函数，因此反复进行直到没有可内联的调用。
+ */
+public class Inliner {
+    // 按标准 CodeWriter 生成的指令数估算的周期数：
+    // call 与 return 共 99 个，被调函数每个局部变量初始化 7 个；
+    // 内联后每个参数 pop local 12 个，每个局部变量初始化 19 个，每个 pointer 保存和恢复 34 个，每个 goto 2 个
+    private static final int CALL_RETURN = 99;
+    private static final int PUSH_ZERO = 7;
+    private static final int POP_ARGUMENT = 12;
+    private static final int INIT_LOCAL = 19;
+    private static final int SAVE_POINTER = 34;
+    private static final int GOTO = 2;
+
+    private Inliner() {
+    }
+
+    /**
+     * 内联整个程序中的小函数，并输出内联的调用处和估计节省的周期数。
+     * @param program 程序中的全部函数
+     * @param limit 被内联函数的命令数上限
+     */
+    public static void inline(List<VMFunction> program, int limit) {
+        Map<String, VMFunction> functions = new HashMap<>();
+        for (VMFunction function : program) {
+            if (function.name() != null) {
+                functions.putIfAbsent(function.name(), function);
+            }
+        }
+
+        Map<String, Integer> sites = new LinkedHashMap<>();
+        int saved = 0;
+        int entryCost = 0;
+        int id = 0;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (VMFunction caller : program) {
+                if (caller.name() == null || !caller.contains(Parser.CommandType.C_CALL)) {
+                    continue;
+                }
+                int base = caller.commands[0].arg2;
+                int extra = 0;
+                boolean inlined = false;
+                List<VMCommand> out = new ArrayList<>();
+                out.add(caller.commands[0]);
+                for (int i = 1; i < caller.count; i++) {
+                    VMCommand command = caller.commands[i];
+                    VMFunction callee = command.type == Parser.CommandType.C_CALL ? functions.get(command.arg1) : null;
+                    int benefit = callee == null ? 0 : benefit(callee, caller, command.arg2, limit);
+                    if (benefit <= 0) {
+                        out.add(command);
+                        continue;
+                    }
+                    int first = out.size();
+                    extra = Math.max(extra, expand(callee, command.arg2, base, id++, out));
+                    // 展开的代码都标为调用处的行号：callee 的行号属于另一个位置，甚至另一个文件
+                    for (int j = first; j < out.size(); j++) {
+                        out.set(j, out.get(j).at(command.line));
+                    }
+                    sites.merge(callee.name(), 1, Integer::sum);
+                    saved += benefit;
+                    inlined = true;
+                }
+                if (inlined) {
+                    out.set(0, new VMCommand(Parser.CommandType.C_FUNCTION, caller.name(), base + extra,
+                            caller.commands[0].line));
+                    caller.setCommands(out);
+                    entryCost += extra * PUSH_ZERO;
+                    changed = true;
+                }
+            }
+        }
+
+        int total = 0;
+        for (int count : sites.values()) {
+            total += count;
+        }
+        System.out.printf("VM 内联: %d 个函数的 %d 处调用，每处各执行一遍估计节省 %d 个周期，调用者入口共多 %d 个周期%n",
+                sites.size(), total, saved, entryCost);
+        for (Map.Entry<String, Integer> entry : sites.entrySet()) {
+            System.out.printf("  %s: %d 处%n", entry.getKey(), entry.getValue());
+        }
+    }
+
+    // 在调用处内联 callee 估计每次执行节省的周期数；不能内联或没有收益时返回 0
+    private static int benefit(VMFunction callee, VMFunction caller, int nArgs, int limit) {
+        if (callee == caller || callee.count - 1 > limit || callee.contains(Parser.CommandType.C_CALL)
+                || !callee.commands[callee.count - 1].isJump()
+                || callee.uses("static") && !callee.fileName.equals(caller.fileName)) {
+            return 0;
+        }
+        int nVars = callee.commands[0].arg2;
+        for (int i = 1; i < callee.count; i++) {
+            VMCommand command = callee.commands[i];
+            if (command.uses("argument") && command.arg2 >= nArgs || command.uses("local") && command.arg2 >= nVars) {
+                return 0; // 访问了栈帧之外的内存
+            }
+        }
+        if (!returnsSingleValue(callee)) {
+            return 0;
+        }
+        int returns = 0;
+        for (int i = 1; i < callee.count - 1; i++) {
+            if (callee.commands[i].type == Parser.CommandType.C_RETURN) {
+                returns++;
+            }
+        }
+        boolean[] pointers = poppedPointers(callee);
+        int saves = (pointers[0] ? 1 : 0) + (pointers[1] ? 1 : 0);
+        return Math.max(0, CALL_RETURN + nVars * PUSH_ZERO
+                - nArgs * POP_ARGUMENT - nVars * INIT_LOCAL - saves * SAVE_POINTER - returns * GOTO);
+    }
+
+    // 按基本块分析栈深度：栈深度在每个基本块入口一致，从不为负，且每个 return 处恰好为 1
+    private static boolean returnsSingleValue(VMFunction function) {
+        function.buildBlocks();
+        if (function.unresolved) {
+            return false;
+        }
+        int[] depths = new int[function.blockCount];
+        Arrays.fill(depths, -1);
+        depths[0] = 0;
+        int[] work = new int[function.blockCount];
+        int size = 0;
+        work[size++] = 0;
+        while (size > 0) {
+            int b = work[--size];
+            int depth = depths[b];
+            for (int i = Math.max(function.blockStarts[b], 1); i < function.blockStarts[b + 1]; i++) {
+                VMCommand command = function.commands[i];
+                if (command.type == Parser.CommandType.C_RETURN && depth != 1) {
+                    return false;
+                }
+                depth += stackEffect(command);
+                if (depth < 0) {
+                    return false;
+                }
+            }
+            for (int s : function.successors[b]) {
+                if (depths[s] < 0) {
+                    depths[s] = depth;
+                    work[size++] = s;
+                } else if (depths[s] != depth) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // 一条命令执行后栈深度的变化
+    private static int stackEffect(VMCommand command) {
+        switch (command.type) {
+            case C_PUSH:
+                return 1;
+            case C_POP:
+            case C_IF:
+                return -1;
+            case C_ARITHMETIC:
+                return command.arg1.equals("neg") || command.arg1.equals("not") ? 0 : -1;
+            default:
+                return 0;
+        }
+    }
+
+    // 函数是否修改 pointer 0 (THIS)、pointer 1 (THAT)
+    private static boolean[] poppedPointers(VMFunction function) {
+        boolean[] popped = new boolean[2];
+        for (int i = 1; i < function.count; i++) {
+            VMCommand command = function.commands[i];
+            if (command.type == Parser.CommandType.C_POP && command.arg1.equals("pointer")) {
+                popped[command.arg2 == 0 ? 0 : 1] = true;
+            }
+        }
+        return popped;
+    }
+
+    // 把 callee 展开到 out，参数和局部变量使用调用者从 base 开始的局部变量，返回占用的局部变量数
+    private static int expand(VMFunction callee, int nArgs, int base, int id, List<VMCommand> out) {
+        int nVars = callee.commands[0].arg2;
+        int locals = base + nArgs;
+        boolean[] pointers = poppedPointers(callee);
+        // 栈顶依次是最后一个到第一个参数
+        for (int i = nArgs - 1; i >= 0; i--) {
+            out.add(VMCommand.pop("local", base + i));
+        }
+        for (int i = 0; i < nVars; i++) {
+            out.add(VMCommand.constant(0));
+            out.add(VMCommand.pop("local", locals + i));
+        }
+        int slot = locals + nVars;
+        for (int p = 0; p < 2; p++) {
+            if (pointers[p]) {
+                out.add(VMCommand.push("pointer", p));
+                out.add(VMCommand.pop("local", slot++));
+            }
+        }
+
+        String prefix = callee.name() + "$inline" + id + ".";
+        String end = prefix + "END";
+        boolean jumpsToEnd = false;
+        for (int i = 1; i < callee.count; i++) {
+            VMCommand command = callee.commands[i];
+            switch (command.type) {
+                case C_PUSH:
+                case C_POP:
+                    if (command.arg1.equals("argument")) {
+                        command = new VMCommand(command.type, "local", base + command.arg2);
+                    } else if (command.arg1.equals("local")) {
+                        command = new VMCommand(command.type, "local", locals + command.arg2);
+                    }
+                    out.add(command);
+                    break;
+                case C_LABEL:
+                case C_GOTO:
+                case C_IF:
+                    out.add(new VMCommand(command.type, prefix + command.arg1, 0));
+                    break;
+                case C_RETURN:
+                    if (i < callee.count - 1) {
+                        out.add(new VMCommand(Parser.CommandType.C_GOTO, end, 0));
+                        jumpsToEnd = true;
+                    }
+                    break;
+                default:
+                    out.add(command);
+                    break;
+            }
+        }
+        if (jumpsToEnd) {
+            out.add(new VMCommand(Parser.CommandType.C_LABEL, end, 0));
+        }
+
+        // 返回值留在栈顶，恢复调用者的 THIS/THAT
+        slot = locals + nVars;
+        for (int p = 0; p < 2; p++) {
+            if (pointers[p]) {
+                out.add(VMCommand.push("local", slot++));
+                out.add(VMCommand.pop("pointer", p));
+            }
+        }
+        return slot - base;
+    }
+}
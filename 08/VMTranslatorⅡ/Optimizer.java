@@ -0,0 +1,310 @@
+package VMTranslatorⅡ;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Optimizer 类：在中间表示上运行的多遍优化，之后再由 CodeWriter 生成汇编代码。
+ * 1. 常量折叠：push constant 2; push constant 3; add 折叠为 push constant 5，
+ *    常量条件的 if-goto 改写为 goto 或删除。
+ * 2. 死代码删除：删除从函数入口不可到达的基本块（例如 goto、return 之后的代码）、
+ *    跳到紧随其后的标签的 goto，以及没有被引用的标签（使基本块更长，便于窥孔优化）。
+ * 3. 寄存器分配：不调用其他函数、不使用 temp 段的叶函数，把访问最多的至多 8 个局部变量分配到 R5-R12（temp 段）。
+ *    只有在整个程序的 temp 值都不跨越 call 存活时才能进行，否则被调用的叶函数会破坏调用者的 temp 值。
+ * 前两遍交替进行直到不再变化。
+ */
+public class Optimizer {
+    // 可用于分配局部变量的寄存器数：R5-R12
+    private static final int REGISTERS = 8;
+
+    private Optimizer() {
+    }
+
+    /**
+     * 优化整个程序，并输出优化前后的命令数。
+     * @param program 程序中的全部函数
+     */
+    public static void optimize(List<VMFunction> program) {
+        int before = 0;
+        for (VMFunction function : program) {
+            before += function.count;
+            boolean changed = true;
+            while (changed) {
+                changed = foldConstants(function);
+                changed |= removeDeadCode(function);
+            }
+        }
+
+        int functions = 0;
+        int locals = 0;
+        if (temporariesAreBlockLocal(program)) {
+            for (VMFunction function : program) {
+                int promoted = promoteLocals(function);
+                if (promoted > 0) {
+                    functions++;
+                    locals += promoted;
+                }
+            }
+        }
+
+        int after = 0;
+        for (VMFunction function : program) {
+            after += function.count;
+        }
+        System.out.printf("VM 优化: 命令 %d -> %d，%d 个叶函数的 %d 个局部变量分配到 R5-R12%n",
+                before, after, functions, locals);
+    }
+
+    // 第 1 遍：常量折叠。顺序扫描，每加入一条命令就尝试与输出末尾的常量合并
+    private static boolean foldConstants(VMFunction function) {
+        List<VMCommand> out = new ArrayList<>();
+        boolean changed = false;
+        for (int i = 0; i < function.count; i++) {
+            out.add(function.commands[i]);
+            while (reduce(out)) {
+                changed = true;
+            }
+        }
+        if (changed) {
+            function.setCommands(out);
+        }
+        return changed;
+    }
+
+    // 辅助方法：尝试折叠输出末尾的命令，成功时返回 true
+    private static boolean reduce(List<VMCommand> out) {
+        int n = out.size();
+        VMCommand last = out.get(n - 1);
+        if (last.type == Parser.CommandType.C_IF && n >= 2 && out.get(n - 2).isConstant()) {
+            // 条件为常量的 if-goto：非 0 时总是跳转，为 0 时从不跳转
+            boolean taken = out.get(n - 2).arg2 != 0;
+            truncate(out, n - 2);
+            if (taken) {
+                out.add(new VMCommand(Parser.CommandType.C_GOTO, last.arg1, 0, last.line));
+            }
+            return true;
+        }
+        if (last.type != Parser.CommandType.C_ARITHMETIC) {
+            return false;
+        }
+        String op = last.arg1;
+        if (op.equals("neg") || op.equals("not")) {
+            if (n >= 2 && out.get(n - 2).isConstant()) {
+                int x = out.get(n - 2).arg2;
+                int line = out.get(n - 2).line;
+                truncate(out, n - 2);
+                out.add(VMCommand.constant(op.equals("neg") ? -x : ~x).at(line));
+                return true;
+            }
+            return false;
+        }
+        if (n >= 3 && out.get(n - 3).isConstant() && out.get(n - 2).isConstant()) {
+            int x = out.get(n - 3).arg2;
+            int y = out.get(n - 2).arg2;
+            int line = out.get(n - 3).line; // 折叠结果沿用表达式第一条命令的行号
+            truncate(out, n - 3);
+            out.add(VMCommand.constant(evaluate(op, x, y)).at(line));
+            return true;
+        }
+        if (n >= 2 && out.get(n - 2).isConstant()) {
+            // 单位元：x + 0、x - 0、x | 0、x & -1 都等于 x
+            int y = out.get(n - 2).arg2;
+            boolean identity = y == 0 && (op.equals("add") || op.equals("sub") || op.equals("or"))
+                    || y == -1 && op.equals("and");
+            if (identity) {
+                truncate(out, n - 2);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 辅助方法：计算二元运算，与 CodeWriter 生成的代码在 16 位机器上的结果一致
+    private static int evaluate(String op, int x, int y) {
+        // 比较运算通过 x - y 的符号判断，结果会随 16 位减法溢出
+        short difference = (short) (x - y);
+        switch (op) {
+            case "add":
+                return x + y;
+            case "sub":
+                return x - y;
+            case "and":
+                return x & y;
+            case "or":
+                return x | y;
+            case "eq":
+                return difference == 0 ? -1 : 0;
+            case "gt":
+                return difference > 0 ? -1 : 0;
+            case "lt":
+                return difference < 0 ? -1 : 0;
+            default:
+                throw new IllegalArgumentException("Unknown arithmetic command: " + op);
+        }
+    }
+
+    // 第 2 遍：删除不可到达的基本块、多余的 goto 和未被引用的标签
+    private static boolean removeDeadCode(VMFunction function) {
+        function.buildBlocks();
+        if (function.unresolved) {
+            return false; // 控制流图不完整，保守起见不做删除
+        }
+        boolean[] reachable = function.reachableBlocks();
+        List<VMCommand> out = new ArrayList<>();
+        for (int b = 0; b < function.blockCount; b++) {
+            if (reachable[b]) {
+                for (int i = function.blockStarts[b]; i < function.blockStarts[b + 1]; i++) {
+                    out.add(function.commands[i]);
+                }
+            }
+        }
+        // goto L 紧跟 label L 时删除 goto
+        for (int i = out.size() - 2; i >= 0; i--) {
+            VMCommand command = out.get(i);
+            VMCommand next = out.get(i + 1);
+            if (command.type == Parser.CommandType.C_GOTO && next.type == Parser.CommandType.C_LABEL
+                    && command.arg1.equals(next.arg1)) {
+                out.remove(i);
+            }
+        }
+        Set<String> referenced = new HashSet<>();
+        for (VMCommand command : out) {
+            if (command.type == Parser.CommandType.C_GOTO || command.type == Parser.CommandType.C_IF) {
+                referenced.add(command.arg1);
+            }
+        }
+        out.removeIf(command -> command.type == Parser.CommandType.C_LABEL && !referenced.contains(command.arg1));
+        if (out.size() == function.count) {
+            return false;
+        }
+        function.setCommands(out);
+        return true;
+    }
+
+    // 检查整个程序中 temp 段的值是否都在写入它的基本块内被读取，且期间没有 call
+    private static boolean temporariesAreBlockLocal(List<VMFunction> program) {
+        for (VMFunction function : program) {
+            BitSet written = new BitSet();
+            for (int i = 0; i < function.count; i++) {
+                VMCommand command = function.commands[i];
+                switch (command.type) {
+                    case C_POP:
+                        if (command.arg1.equals("temp")) {
+                            written.set(command.arg2);
+                        }
+                        break;
+                    case C_PUSH:
+                        if (command.arg1.equals("temp") && !written.get(command.arg2)) {
+                            return false; // 读取的值来自其他基本块，或跨越了 call
+                        }
+                        break;
+                    case C_ARITHMETIC:
+                        break;
+                    default:
+                        written.clear(); // 标签、跳转、call、function、return 都结束 temp 值的生存期
+                        break;
+                }
+            }
+        }
+        return true;
+    }
+
+    // 第 3 遍：把叶函数中收益最大的至多 8 个局部变量分配到 temp 段，其余局部变量重新编号，返回分配的局部变量数
+    private static int promoteLocals(VMFunction function) {
+        if (function.name() == null || function.contains(Parser.CommandType.C_CALL) || function.uses("temp")) {
+            return 0;
+        }
+        int nVars = function.commands[0].arg2;
+        if (nVars == 0) {
+            return 0;
+        }
+        for (int i = 1; i < function.count; i++) {
+            if (function.commands[i].uses("local") && function.commands[i].arg2 >= nVars) {
+                return 0; // 访问了函数帧之外的局部变量，无法安全地重新编号
+            }
+        }
+
+        // 入口块中先被 pop 赋值的局部变量不需要初始化为 0（入口块是所有路径的必经之处）
+        boolean[] assigned = new boolean[nVars];
+        boolean[] seen = new boolean[nVars];
+        for (int i = 1; i < function.count; i++) {
+            VMCommand command = function.commands[i];
+            if (command.type == Parser.CommandType.C_LABEL || command.type == Parser.CommandType.C_IF
+                    || command.isJump()) {
+                break;
+            }
+            if (command.uses("local") && !seen[command.arg2]) {
+                assigned[command.arg2] = command.type == Parser.CommandType.C_POP;
+                seen[command.arg2] = true;
+            }
+        }
+
+        // 按 CodeWriter 生成的指令数估算收益：push 少 3 条，pop 少 8 条，需要初始化为 0 时多 5 条
+        int[] benefit = new int[nVars];
+        for (int i = 0; i < nVars; i++) {
+            benefit[i] = assigned[i] ? 0 : -5;
+        }
+        for (int i = 1; i < function.count; i++) {
+            VMCommand command = function.commands[i];
+            if (command.uses("local")) {
+                benefit[command.arg2] += command.type == Parser.CommandType.C_PUSH ? 3 : 8;
+            }
+        }
+        // 选出收益为正的局部变量中收益最大的至多 8 个，依次分配到 temp 0-7
+        int[] register = new int[nVars];
+        Arrays.fill(register, -1);
+        int promoted = 0;
+        while (promoted < REGISTERS) {
+            int best = -1;
+            for (int i = 0; i < nVars; i++) {
+                if (register[i] < 0 && benefit[i] > 0 && (best < 0 || benefit[i] > benefit[best])) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            register[best] = promoted++;
+        }
+        if (promoted == 0) {
+            return 0;
+        }
+        // 其余局部变量按原顺序重新编号
+        int[] slot = new int[nVars];
+        int remaining = 0;
+        for (int i = 0; i < nVars; i++) {
+            slot[i] = register[i] < 0 ? remaining++ : -1;
+        }
+
+        List<VMCommand> out = new ArrayList<>();
+        int line = function.commands[0].line;
+        out.add(new VMCommand(Parser.CommandType.C_FUNCTION, function.name(), remaining, line));
+        for (int i = 0; i < nVars; i++) {
+            if (register[i] >= 0 && !assigned[i]) {
+                out.add(VMCommand.constant(0).at(line));
+                out.add(VMCommand.pop("temp", register[i]).at(line));
+            }
+        }
+        for (int i = 1; i < function.count; i++) {
+            VMCommand command = function.commands[i];
+            if (command.uses("local")) {
+                int local = command.arg2;
+                command = register[local] >= 0
+                        ? new VMCommand(command.type, "temp", register[local], command.line)
+                        : new VMCommand(command.type, "local", slot[local], command.line);
+            }
+            out.add(command);
+        }
+        function.setCommands(out);
+        return promoted;
+    }
+
+    // 辅助方法：删除列表中下标 size 及之后的元素
+    private static void truncate(List<VMCommand> list, int size) {
+        list.subList(size, list.size()).clear();
+    }
+}
@@ -1,89 +1,399 @@
 package VMTranslatorⅡ;
 
 import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 
+/**
+ * Parser 类：VM 命令解析器。
+ * 把整个 .vm 文件映射到内存，按字节偏移扫描单词，不使用正则表达式，也不逐行创建字符串。
+ * 总是预读下一条命令，因此 hasMoreCommands() 准确反映是否还有命令，文件末尾的注释和空行不会产生多余的命令。
+ * 每条命令解析为基本类型的记录：操作码 opcode()、内存段编号 segment()、整数参数 arg2()。
+ * arg1() 对算术命令和 push/pop 返回常量字符串，只有标签名和函数名才需要创建字符串。
+ */
 public class Parser {
-    private BufferedReader reader;
-    private String currentCommand;
-    private CommandType commandType;
-    private String arg1;
-    private int arg2;
+    // 操作码：0-8 为算术命令，其余与 CommandType 一一对应
+    public static final int ADD = 0;
+    public static final int SUB = 1;
+    public static final int NEG = 2;
+    public static final int EQ = 3;
+    public static final int GT = 4;
+    public static final int LT = 5;
+    public static final int AND = 6;
+    public static final int OR = 7;
+    public static final int NOT = 8;
+    public static final int PUSH = 9;
+    public static final int POP = 10;
+    public static final int LABEL = 11;
+    public static final int GOTO = 12;
+    public static final int IF_GOTO = 13;
+    public static final int FUNCTION = 14;
+    public static final int CALL = 15;
+    public static final int RETURN = 16;
+
+    // 内存段编号
+    public static final int CONSTANT = 0;
+    public static final int LOCAL = 1;
+    public static final int ARGUMENT = 2;
+    public static final int THIS = 3;
+    public static final int THAT = 4;
+    public static final int STATIC = 5;
+    public static final int TEMP = 6;
+    public static final int POINTER = 7;
+
+    // 各操作码、内存段编号对应的名称
+    public static final String[] OPCODE_NAMES = {
+            "add", "sub", "neg", "eq", "gt", "lt", "and", "or", "not",
+            "push", "pop", "label", "goto", "if-goto", "function", "call", "return"
+    };
+    public static final String[] SEGMENT_NAMES = {
+            "constant", "local", "argument", "this", "that", "static", "temp", "pointer"
+    };
 
     public enum CommandType {
         C_ARITHMETIC, C_PUSH, C_POP, C_LABEL, C_GOTO, C_IF, C_FUNCTION, C_RETURN, C_CALL
     }
 
+    // 各操作码对应的命令类型
+    private static final CommandType[] COMMAND_TYPES = {
+            CommandType.C_ARITHMETIC, CommandType.C_ARITHMETIC, CommandType.C_ARITHMETIC,
+            CommandType.C_ARITHMETIC, CommandType.C_ARITHMETIC, CommandType.C_ARITHMETIC,
+            CommandType.C_ARITHMETIC, CommandType.C_ARITHMETIC, CommandType.C_ARITHMETIC,
+            CommandType.C_PUSH, CommandType.C_POP, CommandType.C_LABEL, CommandType.C_GOTO, CommandType.C_IF,
+            CommandType.C_FUNCTION, CommandType.C_CALL, CommandType.C_RETURN
+    };
+
+    /**
+     * 由命令类型和 arg1 得到操作码，用于中间表示中的命令。
+     * @param type 命令类型
+     * @param arg1 算术命令名，其他命令忽略
+     * @return 操作码
+     */
+    public static int opcodeOf(CommandType type, String arg1) {
+        int from = type == CommandType.C_ARITHMETIC ? ADD : PUSH;
+        for (int i = from; i < COMMAND_TYPES.length; i++) {
+            if (COMMAND_TYPES[i] == type && (type != CommandType.C_ARITHMETIC || OPCODE_NAMES[i].equals(arg1))) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown command: " + type + " " + arg1);
+    }
+
+    /**
+     * 由内存段名得到内存段编号。
+     * @param name 内存段名
+     * @return 内存段编号；不是内存段名时返回 -1
+     */
+    public static int segmentOf(String name) {
+        for (int i = 0; i < SEGMENT_NAMES.length; i++) {
+            if (SEGMENT_NAMES[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private final MappedByteBuffer data;
+    private final int length;
+    private final String fileName;
+    // 扫描游标与当前行号（用于错误信息）
+    private int cursor;
+    private int line;
+
+    // 当前命令
+    private int opcode;
+    private int segment;
+    private int nameStart;
+    private int nameEnd;
+    private int arg2;
+    private int commandLine;
+
+    // 预读的下一条命令，nextOpcode 为 -1 表示没有更多命令
+    private int nextOpcode;
+    private int nextSegment;
+    private int nextNameStart;
+    private int nextNameEnd;
+    private int nextArg2;
+    private int nextLine;
+
     public Parser(File file) throws IOException {
-        reader = new BufferedReader(new FileReader(file));
-        currentCommand = null;
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        length = data.limit();
+        fileName = file.getName();
+        cursor = 0;
+        line = 1;
+        opcode = -1;
+        scanNext();
+    }
+
+    public boolean hasMoreCommands() {
+        return nextOpcode >= 0;
+    }
+
+    public void advance() {
+        opcode = nextOpcode;
+        segment = nextSegment;
+        nameStart = nextNameStart;
+        nameEnd = nextNameEnd;
+        arg2 = nextArg2;
+        commandLine = nextLine;
+        scanNext();
+    }
+
+    // 扫描下一条命令，跳过空白、空行和 // 注释
+    private void scanNext() {
+        nextOpcode = -1;
+        while (true) {
+            skipBlanks();
+            if (cursor >= length) {
+                return;
+            }
+            byte b = data.get(cursor);
+            if (b == '\n') {
+                line++;
+                cursor++;
+            } else if (b == '\r') {
+                cursor++;
+            } else if (isComment()) {
+                while (cursor < length && data.get(cursor) != '\n') {
+                    cursor++;
+                }
+            } else {
+                break;
+            }
+        }
+
+        nextLine = line;
+        int start = cursor;
+        int end = skipWord();
+        nextOpcode = opcode(start, end);
+        nextSegment = -1;
+        nextNameStart = 0;
+        nextNameEnd = 0;
+        nextArg2 = 0;
+        switch (nextOpcode) {
+            case PUSH:
+            case POP:
+                skipBlanks();
+                start = cursor;
+                nextSegment = segment(start, skipWord());
+                nextArg2 = number();
+                break;
+            case LABEL:
+            case GOTO:
+            case IF_GOTO:
+                skipBlanks();
+                nextNameStart = cursor;
+                nextNameEnd = skipWord();
+                break;
+            case FUNCTION:
+            case CALL:
+                skipBlanks();
+                nextNameStart = cursor;
+                nextNameEnd = skipWord();
+                nextArg2 = number();
+                break;
+            default:
+                break;
+        }
+        if (nextNameStart == nextNameEnd && nextOpcode >= LABEL && nextOpcode <= CALL) {
+            throw error("missing name");
+        }
+        // 命令之后只允许空白和注释
+        skipBlanks();
+        if (cursor < length && data.get(cursor) != '\n' && data.get(cursor) != '\r' && !isComment()) {
+            throw error("unexpected text");
+        }
+    }
+
+    // 根据首字母和长度分派，再逐字节确认（命令名不区分大小写）
+    private int opcode(int start, int end) {
+        int size = end - start;
+        int candidate;
+        switch (lower(data.get(start))) {
+            case 'a':
+                candidate = lower(data.get(start + Math.min(1, size - 1))) == 'd' ? ADD : AND;
+                break;
+            case 's':
+                candidate = SUB;
+                break;
+            case 'n':
+                candidate = size > 1 && lower(data.get(start + 1)) == 'e' ? NEG : NOT;
+                break;
+            case 'e':
+                candidate = EQ;
+                break;
+            case 'g':
+                candidate = size == 2 ? GT : GOTO;
+                break;
+            case 'l':
+                candidate = size == 2 ? LT : LABEL;
+                break;
+            case 'o':
+                candidate = OR;
+                break;
+            case 'p':
+                candidate = size == 4 ? PUSH : POP;
+                break;
+            case 'i':
+                candidate = IF_GOTO;
+                break;
+            case 'f':
+                candidate = FUNCTION;
+                break;
+            case 'c':
+                candidate = CALL;
+                break;
+            case 'r':
+                candidate = RETURN;
+                break;
+            default:
+                throw error("unknown command");
+        }
+        if (!matches(start, end, OPCODE_NAMES[candidate], true)) {
+            throw error("unknown command");
+        }
+        return candidate;
     }
 
-    public boolean hasMoreCommands() throws IOException {
-        return reader.ready();
+    private int segment(int start, int end) {
+        if (start == end) {
+            throw error("missing segment");
+        }
+        int candidate;
+        switch (data.get(start)) {
+            case 'c':
+                candidate = CONSTANT;
+                break;
+            case 'l':
+                candidate = LOCAL;
+                break;
+            case 'a':
+                candidate = ARGUMENT;
+                break;
+            case 's':
+                candidate = STATIC;
+                break;
+            case 'p':
+                candidate = POINTER;
+                break;
+            case 't':
+                // this、that、temp
+                candidate = end - start < 4 ? -1 : data.get(start + 1) == 'e' ? TEMP
+                        : data.get(start + 2) == 'i' ? THIS : THAT;
+                break;
+            default:
+                candidate = -1;
+                break;
+        }
+        if (candidate < 0 || !matches(start, end, SEGMENT_NAMES[candidate], false)) {
+            throw error("unknown segment");
+        }
+        return candidate;
+    }
+
+    // 解析十进制整数参数
+    private int number() {
+        skipBlanks();
+        boolean negative = cursor < length && data.get(cursor) == '-';
+        if (negative) {
+            cursor++;
+        }
+        int start = cursor;
+        int value = 0;
+        while (cursor < length && data.get(cursor) >= '0' && data.get(cursor) <= '9') {
+            value = value * 10 + (data.get(cursor) - '0');
+            cursor++;
+        }
+        if (cursor == start) {
+            throw error("missing number");
+        }
+        return negative ? -value : value;
     }
 
-    public void advance() throws IOException {
-        currentCommand = null;
-        while (reader.ready()) {
-            String line = reader.readLine().trim();
-            if (line.isEmpty() || line.startsWith("//")) {
-                continue;
+    private boolean matches(int start, int end, String word, boolean ignoreCase) {
+        if (end - start != word.length()) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            byte b = data.get(start + i);
+            if ((ignoreCase ? lower(b) : b) != word.charAt(i)) {
+                return false;
             }
-            currentCommand = line.split("//")[0].trim();
-            break;
-        }
-        parseCommand();
-    }
-
-    private void parseCommand() {
-        if (currentCommand == null) return;
-        String[] parts = currentCommand.split("\\s+");
-        String cmd = parts[0].toLowerCase();
-
-        if (cmd.equals("add") || cmd.equals("sub") || cmd.equals("neg") ||
-                cmd.equals("eq") || cmd.equals("gt") || cmd.equals("lt") ||
-                cmd.equals("and") || cmd.equals("or") || cmd.equals("not")) {
-            commandType = CommandType.C_ARITHMETIC;
-            arg1 = cmd;
-        } else if (cmd.equals("push")) {
-            commandType = CommandType.C_PUSH;
-            arg1 = parts[1];
-            arg2 = Integer.parseInt(parts[2]);
-        } else if (cmd.equals("pop")) {
-            commandType = CommandType.C_POP;
-            arg1 = parts[1];
-            arg2 = Integer.parseInt(parts[2]);
-        } else if (cmd.equals("label")) {
-            commandType = CommandType.C_LABEL;
-            arg1 = parts[1];
-        } else if (cmd.equals("goto")) {
-            commandType = CommandType.C_GOTO;
-            arg1 = parts[1];
-        } else if (cmd.equals("if-goto")) {
-            commandType = CommandType.C_IF;
-            arg1 = parts[1];
-        } else if (cmd.equals("function")) {
-            commandType = CommandType.C_FUNCTION;
-            arg1 = parts[1];
-            arg2 = Integer.parseInt(parts[2]);
-        } else if (cmd.equals("call")) {
-            commandType = CommandType.C_CALL;
-            arg1 = parts[1];
-            arg2 = Integer.parseInt(parts[2]);
-        } else if (cmd.equals("return")) {
-            commandType = CommandType.C_RETURN;
+        }
+        return true;
+    }
+
+    private static int lower(byte b) {
+        return b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b;
+    }
+
+    private void skipBlanks() {
+        while (cursor < length && (data.get(cursor) == ' ' || data.get(cursor) == '\t')) {
+            cursor++;
         }
     }
 
+    // 跳过一个单词，返回单词的结束位置
+    private int skipWord() {
+        while (cursor < length) {
+            byte b = data.get(cursor);
+            if (b == ' ' || b == '\t' || b == '\n' || b == '\r' || isComment()) {
+                break;
+            }
+            cursor++;
+        }
+        return cursor;
+    }
+
+    private boolean isComment() {
+        return data.get(cursor) == '/' && cursor + 1 < length && data.get(cursor + 1) == '/';
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(fileName + ":" + line + ": " + message);
+    }
+
     public CommandType commandType() {
-        return commandType;
+        return COMMAND_TYPES[opcode];
+    }
+
+    public int opcode() {
+        return opcode;
     }
 
+    // push/pop 的内存段编号，其他命令返回 -1
+    public int segment() {
+        return segment;
+    }
+
+    // 算术命令名、内存段名（常量，不分配内存），或标签名、函数名；return 返回 null
     public String arg1() {
-        return arg1;
+        if (opcode <= NOT) {
+            return OPCODE_NAMES[opcode];
+        }
+        if (segment >= 0) {
+            return SEGMENT_NAMES[segment];
+        }
+        if (nameStart == nameEnd) {
+            return null;
+        }
+        byte[] name = new byte[nameEnd - nameStart];
+        for (int i = 0; i < name.length; i++) {
+            name[i] = data.get(nameStart + i);
+        }
+        return new String(name, StandardCharsets.ISO_8859_1);
     }
 
     public int arg2() {
         return arg2;
     }
-}
\ No newline at end of file
+
+    // 当前命令在源文件中的行号，从 1 开始
+    public int lineNumber() {
+        return commandLine;
+    }
+}
@@ -0,0 +1,308 @@
+package VMTranslatorⅡ;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Peephole 类：对 CodeWriter 缓冲的 Hack 汇编指令窗口做窥孔优化。
+ * 改写只发生在不跨标签的直线代码内，因此每删除一条指令，程序每次经过该处就少执行一个周期。
+ * 规则：
+ * 1. 压栈后紧跟出栈到 D（push D; pop D）：整段删除，或在后续指令需要 A 时只保留 @SP/A=M。
+ * 2. 压栈改写为 @SP/M=M+1/A=M-1/M=D，少一条指令。
+ * 3. 冗余的 @X：A 寄存器已知等于 X 时删除。
+ * 4. M=M+1 后紧跟 AM=M-1：合并为 A=M。
+ * 5. 对 D 的死写：D 在被读取前又被覆盖时删除。
+ * 6. 小常数：@0/@1 与 D=A、D=D+A、D=D-A 等组合改写为 D=0、D=D+1 等单条指令。
+ */
+public class Peephole {
+    // 把 D 压栈的两种形式：CodeWriter 生成的原始形式和规则 2 改写后的形式
+    private static final String[][] PUSH_D = {
+            {"@SP", "A=M", "M=D", "@SP", "M=M+1"},
+            {"@SP", "M=M+1", "A=M-1", "M=D"}
+    };
+    // 出栈到 D
+    private static final String[] POP_D = {"@SP", "AM=M-1", "D=M"};
+
+    private Peephole() {
+    }
+
+    /**
+     * 对一段汇编代码反复应用全部规则，直到没有规则可用。
+     * @param lines 汇编代码，每行一条指令、标签或注释
+     * @return 优化后的汇编代码
+     */
+    public static List<String> optimize(List<String> lines) {
+        List<String> code = new ArrayList<>(lines);
+        boolean changed = true;
+        while (changed) {
+            changed = foldPushPop(code);
+            changed |= shortenPush(code);
+            changed |= removeRedundantLoads(code);
+            changed |= mergeIncrementDecrement(code);
+            changed |= removeDeadWrites(code);
+            changed |= foldSmallConstants(code);
+        }
+        return code;
+    }
+
+    /**
+     * 统计汇编代码中的指令数（即占用的 ROM 大小），不含标签和注释。
+     * @param lines 汇编代码
+     * @return 指令数
+     */
+    public static int countInstructions(List<String> lines) {
+        int count = 0;
+        for (String line : lines) {
+            if (!isComment(line) && !isLabel(line)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // 规则 1：push D; pop D
+    private static boolean foldPushPop(List<String> code) {
+        boolean changed = false;
+        for (int i = 0; i < code.size(); i++) {
+            for (String[] push : PUSH_D) {
+                int[] match = match(code, i, push, POP_D);
+                if (match == null) {
+                    continue;
+                }
+                int after = next(code, match[match.length - 1] + 1);
+                if (after < 0) {
+                    break; // 窗口末尾，看不到后续指令
+                }
+                String line = code.get(after);
+                if (isAInstruction(line)) {
+                    // 后续指令重新设置 A：D 不变，栈不变，整段删除
+                    for (int index : match) {
+                        code.set(index, null);
+                    }
+                    changed = true;
+                } else if (!isLabel(line) && dest(line).contains("A") && !comp(line).contains("M")) {
+                    // 后续指令只用 A（例如二元运算的 A=A-1）：保留 A = SP 的值
+                    code.set(match[0], "@SP");
+                    code.set(match[1], "A=M");
+                    for (int k = 2; k < match.length; k++) {
+                        code.set(match[k], null);
+                    }
+                    changed = true;
+                }
+                break;
+            }
+        }
+        compact(code);
+        return changed;
+    }
+
+    // 规则 2：@SP/A=M/M=D/@SP/M=M+1 改写为 @SP/M=M+1/A=M-1/M=D
+    private static boolean shortenPush(List<String> code) {
+        boolean changed = false;
+        for (int i = 0; i < code.size(); i++) {
+            int[] match = match(code, i, PUSH_D[0]);
+            if (match == null) {
+                continue;
+            }
+            int after = next(code, match[match.length - 1] + 1);
+            if (after < 0 || !(isAInstruction(code.get(after)) || isLabel(code.get(after)))) {
+                continue; // 改写后 A 的值不同，后续指令必须不依赖 A
+            }
+            code.set(match[1], "M=M+1");
+            code.set(match[2], "A=M-1");
+            code.set(match[3], "M=D");
+            code.set(match[4], null);
+            changed = true;
+        }
+        compact(code);
+        return changed;
+    }
+
+    // 规则 3：跟踪 A 寄存器中的已知符号，删除重复加载
+    private static boolean removeRedundantLoads(List<String> code) {
+        boolean changed = false;
+        String knownA = null;
+        for (int i = 0; i < code.size(); i++) {
+            String line = code.get(i);
+            if (isComment(line)) {
+                continue;
+            }
+            if (isLabel(line)) {
+                knownA = null; // 可能从别处跳转而来
+            } else if (isAInstruction(line)) {
+                String symbol = line.substring(1);
+                if (symbol.equals(knownA)) {
+                    code.set(i, null);
+                    changed = true;
+                }
+                knownA = symbol;
+            } else if (dest(line).contains("A")) {
+                knownA = null;
+            }
+        }
+        compact(code);
+        return changed;
+    }
+
+    // 规则 4：M=M+1 后紧跟 AM=M-1，内存不变，A 等于原来的 M
+    private static boolean mergeIncrementDecrement(List<String> code) {
+        boolean changed = false;
+        for (int i = 0; i < code.size(); i++) {
+            int[] match = match(code, i, new String[]{"M=M+1", "AM=M-1"});
+            if (match != null) {
+                code.set(match[0], "A=M");
+                code.set(match[1], null);
+                changed = true;
+            }
+        }
+        compact(code);
+        return changed;
+    }
+
+    // 规则 5：只写 D 的指令，如果 D 在被读取前又被覆盖，则删除
+    private static boolean removeDeadWrites(List<String> code) {
+        boolean changed = false;
+        for (int i = 0; i < code.size(); i++) {
+            String line = code.get(i);
+            if (isComment(line) || isLabel(line) || isAInstruction(line)
+                    || !dest(line).equals("D") || !jump(line).isEmpty()) {
+                continue;
+            }
+            for (int j = next(code, i + 1); j >= 0 && !isLabel(code.get(j)); j = next(code, j + 1)) {
+                String later = code.get(j);
+                if (isAInstruction(later)) {
+                    continue;
+                }
+                if (comp(later).contains("D") || !jump(later).isEmpty()) {
+                    break; // D 被读取，或跳转目标可能读取 D
+                }
+                if (dest(later).contains("D")) {
+                    code.set(i, null);
+                    changed = true;
+                    break;
+                }
+            }
+        }
+        compact(code);
+        return changed;
+    }
+
+    // 规则 6：@0/@1 与读取 A 的计算合并为使用常数的单条指令
+    private static boolean foldSmallConstants(List<String> code) {
+        boolean changed = false;
+        for (int i = 0; i < code.size(); i++) {
+            String line = code.get(i);
+            if (!"@0".equals(line) && !"@1".equals(line)) {
+                continue;
+            }
+            int use = next(code, i + 1);
+            if (use < 0) {
+                continue;
+            }
+            String instruction = code.get(use);
+            if (isLabel(instruction) || isAInstruction(instruction) || !jump(instruction).isEmpty()
+                    || dest(instruction).contains("M")) {
+                continue;
+            }
+            String folded = foldConstant(comp(instruction), line.equals("@1"));
+            if (folded == null) {
+                continue;
+            }
+            String dest = dest(instruction);
+            if (!dest.contains("A")) {
+                // A 不再等于该常数，后续指令必须重新设置 A
+                int after = next(code, use + 1);
+                if (after < 0 || !isAInstruction(code.get(after))) {
+                    continue;
+                }
+            }
+            code.set(i, null);
+            code.set(use, dest.equals(folded) ? null : dest + "=" + folded); // D=D 之类的指令直接删除
+            changed = true;
+        }
+        compact(code);
+        return changed;
+    }
+
+    // 辅助方法：把 A 替换为常数 0 或 1 后的 comp，无法用单条指令表示时返回 null
+    private static String foldConstant(String comp, boolean one) {
+        switch (comp) {
+            case "A":
+                return one ? "1" : "0";
+            case "D+A":
+                return one ? "D+1" : "D";
+            case "D-A":
+                return one ? "D-1" : "D";
+            default:
+                return null;
+        }
+    }
+
+    // 辅助方法：从 from 开始依次匹配若干段指令序列（跳过注释，不跳过标签），返回各指令的下标
+    private static int[] match(List<String> code, int from, String[]... patterns) {
+        int length = 0;
+        for (String[] pattern : patterns) {
+            length += pattern.length;
+        }
+        int[] indexes = new int[length];
+        int k = 0;
+        int i = from;
+        for (String[] pattern : patterns) {
+            for (String expected : pattern) {
+                i = next(code, i);
+                if (i < 0 || !code.get(i).equals(expected)) {
+                    return null;
+                }
+                indexes[k++] = i++;
+            }
+        }
+        return isComment(code.get(from)) ? null : indexes; // 从指令处开始匹配，避免同一序列匹配多次
+    }
+
+    // 辅助方法：返回 from 及之后第一条不是注释的行的下标，没有时返回 -1
+    private static int next(List<String> code, int from) {
+        for (int i = from; i < code.size(); i++) {
+            if (code.get(i) != null && !isComment(code.get(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // 辅助方法：删除被标记为 null 的行
+    private static void compact(List<String> code) {
+        code.removeIf(Objects::isNull);
+    }
+
+    private static boolean isComment(String line) {
+        return line == null || line.startsWith("//");
+    }
+
+    private static boolean isLabel(String line) {
+        return line.startsWith("(");
+    }
+
+    private static boolean isAInstruction(String line) {
+        return line.startsWith("@");
+    }
+
+    // 辅助方法：C 指令的 dest 字段，没有时返回空字符串
+    private static String dest(String line) {
+        int equals = line.indexOf('=');
+        return equals < 0 ? "" : line.substring(0, equals);
+    }
+
+    // 辅助方法：C 指令的 comp 字段
+    private static String comp(String line) {
+        int equals = line.indexOf('=');
+        int semicolon = line.indexOf(';');
+        return line.substring(equals + 1, semicolon < 0 ? line.length() : semicolon);
+    }
+
+    // 辅助方法：C 指令的 jump 字段，没有时返回空字符串
+    private static String jump(String line) {
+        int semicolon = line.indexOf(';');
+        return semicolon < 0 ? "" : line.substring(semicolon + 1);
+    }
+}
@@ -0,0 +1,223 @@
+package VMTranslatorⅡ;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Regression 类：项目 7、8 共用的回归测试。
+ * 用每个后端翻译每个测试目录（含有 目录名.tst 的目录，例如 07/07/SimpleAdd、08/08/FibonacciElement），
+ * 在 Emulator 上按 .tst 脚本设置 RAM 并运行，与 .cmp 的期望值比较，并报告各后端生成代码的 ROM 大小和周期数。
+ * Emulator 只接受 Hack 汇编器认可的指令，生成了汇编器会拒绝的指令的后端同样判为失败。
+ * 指定基准文件时与其中记录的周期数比较，任何测试失败或周期数增加都使程序以状态 1 退出；
+ * 加上 --update 则把本次结果写入基准文件。
+ * 用法：java VMTranslatorⅡ.Regression [--baseline=文件 [--update]] 07/07 08/08 08/VMTranslatorⅡ/tests
+ * （tests 目录中是课程测试没有覆盖到的情形，格式与课程测试相同）
+ */
+public class Regression {
+    private static final Pattern SET = Pattern.compile("set RAM\\[(\\d+)\\]\\s+(-?\\d+)");
+    private static final Pattern REPEAT = Pattern.compile("repeat (\\d+)");
+    private static final Pattern OUTPUT = Pattern.compile("RAM\\[(\\d+)\\]%");
+    private static final Pattern NUMBER = Pattern.compile("-?\\d+");
+
+    // 一个测试在一个后端上的结果
+    private static class Result {
+        boolean passed;
+        int rom;
+        int cycles;
+        String error; // 生成的代码无法汇编时的错误信息
+    }
+
+    public static void main(String[] args) throws IOException {
+        File baseline = null;
+        boolean update = false;
+        List<File> roots = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--baseline=")) {
+                baseline = new File(arg.substring("--baseline=".length()));
+            } else if (arg.equals("--update")) {
+                update = true;
+            } else if (!arg.startsWith("--")) {
+                roots.add(new File(arg));
+            } else {
+                roots.clear();
+                break;
+            }
+        }
+        if (roots.isEmpty() || update && baseline == null) {
+            System.out.println("Usage: java Regression [--baseline=file [--update]] <test directory or directory of tests>...");
+            return;
+        }
+
+        List<File> tests = new ArrayList<>();
+        for (File root : roots) {
+            collectTests(root, tests);
+        }
+        Map<String, Integer> expected = new HashMap<>();
+        if (baseline != null && baseline.exists() && !update) {
+            expected = readBaseline(baseline);
+        }
+
+        Backend[] backends = Backend.values();
+        Map<String, Integer> cycles = new LinkedHashMap<>();
+        int[] totalRom = new int[backends.length];
+        int[] totalCycles = new int[backends.length];
+        boolean failed = false;
+        for (File test : tests) {
+            for (int b = 0; b < backends.length; b++) {
+                String key = test.getName() + "." + backends[b].name;
+                Result result = run(test, backends[b]);
+                totalRom[b] += result.rom;
+                totalCycles[b] += result.cycles;
+                cycles.put(key, result.cycles);
+
+                String change = "";
+                Integer before = expected.get(key);
+                if (before != null && before != result.cycles) {
+                    change = String.format(" (%+d)", result.cycles - before);
+                    if (result.cycles > before) {
+                        change += " 周期数增加";
+                        failed = true;
+                    }
+                }
+                failed |= !result.passed;
+                System.out.printf("%-18s %-9s %-4s ROM %5d  周期 %6d%s%s%n", test.getName(), backends[b].name,
+                        result.passed ? "OK" : "FAIL", result.rom, result.cycles, change,
+                        result.error == null ? "" : "  " + result.error);
+            }
+        }
+        System.out.println();
+        for (int b = 0; b < backends.length; b++) {
+            System.out.printf("%-9s 合计 ROM %6d  周期 %7d%n", backends[b].name, totalRom[b], totalCycles[b]);
+        }
+
+        if (update) {
+            writeBaseline(baseline, cycles);
+            System.out.println("基准已写入 " + baseline.getPath());
+        } else if (failed) {
+            System.exit(1);
+        }
+    }
+
+    // 收集测试目录：含有 目录名.tst 的目录本身就是测试，否则按名称顺序查找其子目录
+    private static void collectTests(File directory, List<File> tests) {
+        if (new File(directory, directory.getName() + ".tst").isFile()) {
+            tests.add(directory);
+            return;
+        }
+        File[] children = directory.listFiles(File::isDirectory);
+        if (children == null) {
+            return;
+        }
+        Arrays.sort(children, Comparator.comparing(File::getName));
+        for (File child : children) {
+            collectTests(child, tests);
+        }
+    }
+
+    // 在临时目录中用指定后端翻译测试，再运行 .tst 脚本并与 .cmp 比较
+    private static Result run(File test, Backend backend) throws IOException {
+        String name = test.getName();
+        File work = Files.createTempDirectory("regression").toFile();
+        File copy = new File(work, name);
+        copy.mkdir();
+        File[] vmFiles = test.listFiles((dir, file) -> file.endsWith(".vm"));
+        for (File vmFile : vmFiles) {
+            Files.copy(vmFile.toPath(), new File(copy, vmFile.getName()).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        // 与课程的约定一致：单个文件直接翻译（不带引导代码），多个文件按目录翻译
+        File input = vmFiles.length == 1 ? new File(copy, vmFiles[0].getName()) : copy;
+
+        Result result = new Result();
+        PrintStream out = System.out;
+        try {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream())); // 不输出翻译过程中的优化报告
+            File asm = VMTranslator.translate(input, backend, 1);
+            System.setOut(out);
+            if (asm == null) {
+                throw new IOException("Cannot translate " + test.getPath());
+            }
+            Emulator emulator;
+            try {
+                emulator = new Emulator(Files.readAllLines(asm.toPath(), StandardCharsets.UTF_8));
+            } catch (IllegalArgumentException e) {
+                result.error = e.getMessage();
+                return result;
+            }
+            String script = new String(Files.readAllBytes(new File(test, name + ".tst").toPath()), StandardCharsets.UTF_8)
+                    .replaceAll("//.*", "");
+            Matcher set = SET.matcher(script);
+            while (set.find()) {
+                emulator.set(Integer.parseInt(set.group(1)), Integer.parseInt(set.group(2)));
+            }
+            Matcher repeat = REPEAT.matcher(script);
+            result.cycles = emulator.run(repeat.find() ? Integer.parseInt(repeat.group(1)) : Integer.MAX_VALUE);
+            result.rom = emulator.romSize();
+            result.passed = outputs(emulator, script).equals(expectedOutputs(new File(test, name + ".cmp")));
+        } finally {
+            System.setOut(out);
+            deleteRecursively(work);
+        }
+        return result;
+    }
+
+    // .tst 脚本的 output-list 中各个 RAM 单元的值
+    private static List<Integer> outputs(Emulator emulator, String script) {
+        List<Integer> values = new ArrayList<>();
+        Matcher output = OUTPUT.matcher(script);
+        while (output.find()) {
+            values.add(emulator.get(Integer.parseInt(output.group(1))));
+        }
+        return values;
+    }
+
+    // .cmp 文件中的期望值：跳过列名所在的行，按顺序读取其他行中的整数
+    private static List<Integer> expectedOutputs(File cmp) throws IOException {
+        List<Integer> values = new ArrayList<>();
+        for (String line : Files.readAllLines(cmp.toPath(), StandardCharsets.UTF_8)) {
+            if (line.contains("RAM")) {
+                continue;
+            }
+            Matcher number = NUMBER.matcher(line);
+            while (number.find()) {
+                values.add(Integer.parseInt(number.group()));
+            }
+        }
+        return values;
+    }
+
+    // 基准文件每行一个结果：测试名.后端名=周期数
+    private static Map<String, Integer> readBaseline(File baseline) throws IOException {
+        Map<String, Integer> cycles = new HashMap<>();
+        for (String line : Files.readAllLines(baseline.toPath(), StandardCharsets.UTF_8)) {
+            int equals = line.indexOf('=');
+            if (!line.startsWith("#") && equals > 0) {
+                cycles.put(line.substring(0, equals).trim(), Integer.parseInt(line.substring(equals + 1).trim()));
+            }
+        }
+        return cycles;
+    }
+
+    private static void writeBaseline(File baseline, Map<String, Integer> cycles) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("# 各测试在各后端上的周期数，由 Regression --update 生成");
+        for (Map.Entry<String, Integer> entry : cycles.entrySet()) {
+            lines.add(entry.getKey() + "=" + entry.getValue());
+        }
+        Files.write(baseline.toPath(), lines, StandardCharsets.UTF_8);
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
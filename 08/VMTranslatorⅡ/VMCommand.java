@@ -0,0 +1,81 @@
+package VMTranslatorⅡ;
+
+/**
+ * VMCommand 类：中间表示中的一条 VM 命令，字段含义与 Parser 的 commandType()、arg1()、arg2() 相同。
+ * push constant 的 arg2 可以是任意 16 位有符号数（常量折叠的结果可能为负），由 CodeWriter 负责生成。
+ * line 是命令在源 .vm 文件中的行号，供 --annotate 使用；优化和内联生成的命令沿用被替换的命令或调用处的行号，
+ * 0 表示未知。
+ */
+public final class VMCommand {
+    public final Parser.CommandType type;
+    public final String arg1;
+    public final int arg2;
+    public final int line;
+
+    public VMCommand(Parser.CommandType type, String arg1, int arg2) {
+        this(type, arg1, arg2, 0);
+    }
+
+    public VMCommand(Parser.CommandType type, String arg1, int arg2, int line) {
+        this.type = type;
+        this.arg1 = arg1;
+        this.arg2 = arg2;
+        this.line = line;
+    }
+
+    // 行号改为 line 的同一条命令
+    public VMCommand at(int line) {
+        return line == this.line ? this : new VMCommand(type, arg1, arg2, line);
+    }
+
+    public static VMCommand push(String segment, int index) {
+        return new VMCommand(Parser.CommandType.C_PUSH, segment, index);
+    }
+
+    public static VMCommand pop(String segment, int index) {
+        return new VMCommand(Parser.CommandType.C_POP, segment, index);
+    }
+
+    public static VMCommand constant(int value) {
+        return push("constant", (short) value);
+    }
+
+    // 是否为 push constant
+    public boolean isConstant() {
+        return type == Parser.CommandType.C_PUSH && arg1.equals("constant");
+    }
+
+    // 是否访问指定的内存段
+    public boolean uses(String segment) {
+        return (type == Parser.CommandType.C_PUSH || type == Parser.CommandType.C_POP) && arg1.equals(segment);
+    }
+
+    // 是否结束一个基本块：之后的命令只能经由标签到达
+    public boolean isJump() {
+        return type == Parser.CommandType.C_GOTO || type == Parser.CommandType.C_RETURN;
+    }
+
+    @Override
+    public String toString() {
+        switch (type) {
+            case C_ARITHMETIC:
+                return arg1;
+            case C_RETURN:
+                return "return";
+            case C_LABEL:
+                return "label " + arg1;
+            case C_GOTO:
+                return "goto " + arg1;
+            case C_IF:
+                return "if-goto " + arg1;
+            case C_PUSH:
+                return "push " + arg1 + " " + arg2;
+            case C_POP:
+                return "pop " + arg1 + " " + arg2;
+            case C_FUNCTION:
+                return "function " + arg1 + " " + arg2;
+            default:
+                return "call " + arg1 + " " + arg2;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package VMTranslatorⅡ;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * VMFunction 类：中间表示中的一个函数，或文件开头不属于任何函数的代码。
+ * 命令按顺序保存在数组中。基本块从 label 开始，到 goto、if-goto、return 结束；
+ * 控制流图以每个基本块的后继块下标表示，由 buildBlocks() 根据当前命令重新构建。
+ */
+public class VMFunction {
+    // 函数所在的 .vm 文件名，决定 static 段的符号前缀
+    public final String fileName;
+    public VMCommand[] commands;
+    public int count;
+
+    // 基本块 b 包含命令 [blockStarts[b], blockStarts[b + 1])
+    public int[] blockStarts;
+    public int blockCount;
+    public int[][] successors;
+    // 是否存在跳转到本函数之外的标签，此时控制流图不完整
+    public boolean unresolved;
+
+    public VMFunction(String fileName) {
+        this.fileName = fileName;
+        commands = new VMCommand[16];
+        count = 0;
+    }
+
+    public void add(VMCommand command) {
+        if (count == commands.length) {
+            commands = Arrays.copyOf(commands, count * 2);
+        }
+        commands[count++] = command;
+    }
+
+    public void setCommands(List<VMCommand> list) {
+        commands = list.toArray(new VMCommand[0]);
+        count = commands.length;
+    }
+
+    // 函数名；文件开头不属于任何函数的代码返回 null
+    public String name() {
+        return count > 0 && commands[0].type == Parser.CommandType.C_FUNCTION ? commands[0].arg1 : null;
+    }
+
+    public boolean contains(Parser.CommandType type) {
+        for (int i = 0; i < count; i++) {
+            if (commands[i].type == type) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean uses(String segment) {
+        for (int i = 0; i < count; i++) {
+            if (commands[i].uses(segment)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 划分基本块并构建控制流图
+    public void buildBlocks() {
+        List<Integer> starts = new ArrayList<>();
+        Map<String, Integer> labelBlocks = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            VMCommand command = commands[i];
+            boolean startsBlock = i == 0 || command.type == Parser.CommandType.C_LABEL
+                    || commands[i - 1].isJump() || commands[i - 1].type == Parser.CommandType.C_IF;
+            if (startsBlock) {
+                starts.add(i);
+            }
+            if (command.type == Parser.CommandType.C_LABEL) {
+                labelBlocks.put(command.arg1, starts.size() - 1);
+            }
+        }
+        blockCount = starts.size();
+        blockStarts = new int[blockCount + 1];
+        for (int b = 0; b < blockCount; b++) {
+            blockStarts[b] = starts.get(b);
+        }
+        blockStarts[blockCount] = count;
+
+        successors = new int[blockCount][];
+        unresolved = false;
+        for (int b = 0; b < blockCount; b++) {
+            VMCommand last = commands[blockStarts[b + 1] - 1];
+            List<Integer> next = new ArrayList<>();
+            if (last.type == Parser.CommandType.C_GOTO || last.type == Parser.CommandType.C_IF) {
+                Integer target = labelBlocks.get(last.arg1);
+                if (target == null) {
+                    unresolved = true;
+                } else {
+                    next.add(target);
+                }
+            }
+            if (!last.isJump() && b + 1 < blockCount) {
+                next.add(b + 1); // 顺序执行到下一个基本块
+            }
+            successors[b] = next.stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    // 从入口块出发可以到达的基本块，需先调用 buildBlocks()
+    public boolean[] reachableBlocks() {
+        boolean[] reachable = new boolean[blockCount];
+        int[] work = new int[blockCount];
+        int size = 0;
+        if (blockCount > 0) {
+            reachable[0] = true;
+            work[size++] = 0;
+        }
+        while (size > 0) {
+            int b = work[--size];
+            for (int s : successors[b]) {
+                if (!reachable[s]) {
+                    reachable[s] = true;
+                    work[size++] = s;
+                }
+            }
+        }
+        return reachable;
+    }
+}
@@ -2,15 +2,88 @@ package VMTranslatorⅡ;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 public class VMTranslator {
+    // 一个 .vm 文件的翻译方式：把该文件的命令交给指定的 CodeWriter
+    private interface FileTranslator {
+        void translate(File vmFile, CodeWriter codeWriter) throws IOException;
+    }
+
     public static void main(String[] args) {
-        if (args.length != 1) {
-            System.out.println("Usage: java VMTranslator <file.vm or directory>");
+        // 解析选项：--backend=standard|size|speed|debug 选择代码生成后端（默认 standard），
+        // 以下选项在所选后端的基础上逐项打开：
+        // --peephole 启用窥孔优化，--trampolines 启用共享的 call/return/比较例程，
+        // --optimize 先把程序读入中间表示并运行 Optimizer 的各遍优化，--tos 启用栈顶缓存，
+        // --annotate 在注释中标出源文件位置，--inline=N 把不超过 N 条命令的小函数内联到调用处，
+        // --prune 删除从 Sys.init 不可到达的函数；
+        // --parallel 或 --jobs=N 在线程池上并行翻译各个文件
+        Backend backend = Backend.STANDARD;
+        List<String> options = new ArrayList<>();
+        int inline = -1;
+        int jobs = 1;
+        String path = null;
+        for (String arg : args) {
+            if (arg.startsWith("--backend=")) {
+                backend = Backend.forName(arg.substring("--backend=".length()));
+                if (backend == null) {
+                    path = null;
+                    break;
+                }
+            } else if (arg.equals("--peephole") || arg.equals("--trampolines") || arg.equals("--optimize")
+                    || arg.equals("--tos") || arg.equals("--annotate") || arg.equals("--prune")) {
+                options.add(arg.substring(2));
+            } else if (arg.startsWith("--inline=")) {
+                try {
+                    inline = Math.max(0, Integer.parseInt(arg.substring("--inline=".length())));
+                } catch (NumberFormatException e) {
+                    path = null;
+                    break;
+                }
+            } else if (arg.equals("--parallel")) {
+                jobs = Runtime.getRuntime().availableProcessors();
+            } else if (arg.startsWith("--jobs=")) {
+                try {
+                    jobs = Math.max(1, Integer.parseInt(arg.substring("--jobs=".length())));
+                } catch (NumberFormatException e) {
+                    path = null;
+                    break;
+                }
+            } else if (path == null && !arg.startsWith("--")) {
+                path = arg;
+            } else {
+                path = null;
+                break;
+            }
+        }
+        if (path == null) {
+            System.out.println("Usage: java VMTranslator [--backend=standard|size|speed|debug] [--peephole] [--trampolines] [--optimize] [--tos] [--annotate] [--inline=N] [--prune] [--parallel | --jobs=N] <file.vm or directory>");
             return;
         }
+        for (String option : options) {
+            backend = backend.with(option);
+        }
+        if (inline >= 0) {
+            backend = backend.withInlining(inline);
+        }
 
-        File input = new File(args[0]);
+        try {
+            translate(new File(path), backend, jobs);
+        } catch (IOException e) {
+            System.err.println("Error during translation: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 翻译一个 .vm 文件或一个目录中的全部 .vm 文件。
+     * 目录的输出文件为目录下的 目录名.asm，多文件程序带有引导代码；单个文件的输出为同名的 .asm 文件。
+     * @param input .vm 文件或目录
+     * @param backend 代码生成后端
+     * @param jobs 并行翻译的线程数，1 表示顺序翻译
+     * @return 输出文件；输入无效时输出原因并返回 null
+     * @throws IOException 如果读写文件失败
+     */
+    public static File translate(File input, Backend backend, int jobs) throws IOException {
         File output;
         List<File> vmFiles = new ArrayList<>();
 
@@ -22,18 +95,19 @@ public class VMTranslator {
                     vmFiles.add(file);
                 }
             }
+            vmFiles.sort(Comparator.comparing(File::getName)); // 按文件名排序，输出与目录遍历顺序无关
         } else if (input.getName().endsWith(".vm")) {
             vmFiles.add(input);
             output = new File(input.getAbsolutePath().replace(".vm", ".asm"));
         } else {
             System.out.println("Input must be a .vm file or a directory containing .vm files");
-            return;
+            return null;
         }
 
         // 检查 vmFiles 是否为空
         if (vmFiles.isEmpty()) {
             System.out.println("No .vm files found in the input.");
-            return;
+            return null;
         }
 
         // 验证输出文件路径
@@ -43,57 +117,176 @@ public class VMTranslator {
             }
             if (!output.createNewFile() && !output.canWrite()) {
                 System.out.println("Cannot write to output file: " + output.getAbsolutePath());
-                return;
+                return null;
             }
         } catch (IOException e) {
             System.out.println("Error creating output file: " + e.getMessage());
-            return;
+            return null;
         }
 
         // 使用 try-with-resources 确保 CodeWriter 正确关闭
         try (CodeWriter codeWriter = new CodeWriter(output)) {
+            backend.configure(codeWriter);
             // 如果是多文件程序，写入引导代码
             if (vmFiles.size() > 1) {
                 codeWriter.writeBootstrap();
             }
 
-            // 翻译每个 .vm 文件
-            for (File vmFile : vmFiles) {
-                Parser parser = new Parser(vmFile);
-                codeWriter.setFileName(vmFile.getName());
-                while (parser.hasMoreCommands()) {
-                    parser.advance();
-                    switch (parser.commandType()) {
-                        case C_ARITHMETIC:
-                            codeWriter.writeArithmetic(parser.arg1());
-                            break;
-                        case C_PUSH:
-                        case C_POP:
-                            codeWriter.writePushPop(parser.commandType(), parser.arg1(), parser.arg2());
-                            break;
-                        case C_LABEL:
-                            codeWriter.writeLabel(parser.arg1());
-                            break;
-                        case C_GOTO:
-                            codeWriter.writeGoto(parser.arg1());
-                            break;
-                        case C_IF:
-                            codeWriter.writeIf(parser.arg1());
-                            break;
-                        case C_FUNCTION:
-                            codeWriter.writeFunction(parser.arg1(), parser.arg2());
-                            break;
-                        case C_CALL:
-                            codeWriter.writeCall(parser.arg1(), parser.arg2());
-                            break;
-                        case C_RETURN:
-                            codeWriter.writeReturn();
-                            break;
+            ExecutorService pool = jobs > 1 && vmFiles.size() > 1 ? Executors.newFixedThreadPool(jobs) : null;
+            try {
+                FileTranslator translator;
+                if (backend.usesIntermediateRepresentation()) {
+                    // 读入整个程序，内联、删除不可到达的函数和优化后再逐文件生成
+                    List<VMFunction> program = new ArrayList<>();
+                    for (List<VMFunction> functions : map(pool, vmFiles, VMTranslator::load)) {
+                        program.addAll(functions);
+                    }
+                    if (backend.inline > 0) {
+                        Inliner.inline(program, backend.inline);
+                    }
+                    if (backend.prune) {
+                        CallGraph.removeUnreachable(program, vmFiles.size() > 1);
+                    }
+                    if (backend.optimize) {
+                        Optimizer.optimize(program);
+                    }
+                    Map<String, List<VMFunction>> byFile = new HashMap<>();
+                    for (VMFunction function : program) {
+                        byFile.computeIfAbsent(function.fileName, k -> new ArrayList<>()).add(function);
+                    }
+                    translator = (vmFile, writer) -> {
+                        for (VMFunction function : byFile.getOrDefault(vmFile.getName(), Collections.emptyList())) {
+                            for (int i = 0; i < function.count; i++) {
+                                VMCommand command = function.commands[i];
+                                writer.setSourceLine(command.line);
+                                write(writer, command.type, Parser.opcodeOf(command.type, command.arg1),
+                                        Parser.segmentOf(command.arg1), command.arg1, command.arg2);
+                            }
+                        }
+                    };
+                } else {
+                    translator = (vmFile, writer) -> {
+                        Parser parser = new Parser(vmFile);
+                        while (parser.hasMoreCommands()) {
+                            parser.advance();
+                            writer.setSourceLine(parser.lineNumber());
+                            write(writer, parser.commandType(), parser.opcode(), parser.segment(), parser.arg1(), parser.arg2());
+                        }
+                    };
+                }
+
+                if (pool == null) {
+                    // 翻译每个 .vm 文件
+                    for (File vmFile : vmFiles) {
+                        codeWriter.setFileName(vmFile.getName());
+                        translator.translate(vmFile, codeWriter);
+                    }
+                } else {
+                    // 每个文件写入独立的内存缓冲区，完成后按文件顺序拼接在引导代码之后
+                    List<CodeWriter> parts = map(pool, vmFiles, vmFile -> {
+                        CodeWriter part = codeWriter.forFile(vmFile.getName());
+                        translator.translate(vmFile, part);
+                        part.close();
+                        return part;
+                    });
+                    for (CodeWriter part : parts) {
+                        codeWriter.append(part);
                     }
                 }
+            } finally {
+                if (pool != null) {
+                    pool.shutdown();
+                }
             }
-        } catch (IOException e) {
-            System.err.println("Error during translation: " + e.getMessage());
+        }
+        return output;
+    }
+
+    // 一个文件上的任务
+    private interface FileTask<T> {
+        T apply(File vmFile) throws IOException;
+    }
+
+    // 对每个文件执行任务，pool 为 null 时顺序执行；结果按文件顺序返回，第一个失败的文件的异常原样抛出
+    private static <T> List<T> map(ExecutorService pool, List<File> vmFiles, FileTask<T> task) throws IOException {
+        List<T> results = new ArrayList<>();
+        if (pool == null) {
+            for (File vmFile : vmFiles) {
+                results.add(task.apply(vmFile));
+            }
+            return results;
+        }
+        List<Future<T>> futures = new ArrayList<>();
+        for (File vmFile : vmFiles) {
+            futures.add(pool.submit(() -> task.apply(vmFile)));
+        }
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Translation interrupted");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            }
+        }
+        return results;
+    }
+
+    // 把一个 .vm 文件读入中间表示：每个 function 命令开始一个新的 VMFunction
+    private static List<VMFunction> load(File vmFile) throws IOException {
+        List<VMFunction> functions = new ArrayList<>();
+        VMFunction current = new VMFunction(vmFile.getName());
+        Parser parser = new Parser(vmFile);
+        while (parser.hasMoreCommands()) {
+            parser.advance();
+            if (parser.commandType() == Parser.CommandType.C_FUNCTION && current.count > 0) {
+                functions.add(current);
+                current = new VMFunction(vmFile.getName());
+            }
+            current.add(new VMCommand(parser.commandType(), parser.arg1(), parser.arg2(), parser.lineNumber()));
+        }
+        if (current.count > 0) {
+            functions.add(current);
+        }
+        return functions;
+    }
+
+    // 把一条 VM 命令交给 CodeWriter 生成汇编代码；算术命令和内存段按 Parser 的编号分派
+    private static void write(CodeWriter codeWriter, Parser.CommandType type, int opcode, int segment,
+                              String arg1, int arg2) {
+        switch (type) {
+            case C_ARITHMETIC:
+                codeWriter.writeArithmetic(opcode);
+                break;
+            case C_PUSH:
+            case C_POP:
+                codeWriter.writePushPop(type, segment, arg2);
+                break;
+            case C_LABEL:
+                codeWriter.writeLabel(arg1);
+                break;
+            case C_GOTO:
+                codeWriter.writeGoto(arg1);
+                break;
+            case C_IF:
+                codeWriter.writeIf(arg1);
+                break;
+            case C_FUNCTION:
+                codeWriter.writeFunction(arg1, arg2);
+                break;
+            case C_CALL:
+                codeWriter.writeCall(arg1, arg2);
+                break;
+            case C_RETURN:
+                codeWriter.writeReturn();
+                break;
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,20 @@
+// Tests BitwiseTest.asm on the CPU emulator.
+// The Hack assembler accepts only the canonical comps D&A, D&M, D|A, D|M;
+// the regression emulator rejects the commuted forms, so this test fails
+// for any backend that emits them.
+
+compare-to BitwiseTest.cmp,
+
+set RAM[0] 256,     // initializes the stack pointer
+set RAM[3] 3000,    // base address of the this segment
+set RAM[3000] 3855, // x = 0x0F0F
+set RAM[3001] 255,  // y = 0x00FF
+
+repeat 300 {        // enough cycles to complete the execution
+  ticktock;
+}
+
+// Outputs the stack pointer and the stack contents: RAM[256]-RAM[261]
+output-list RAM[0]%D2.6.2 RAM[256]%D2.6.2 RAM[257]%D2.6.2 RAM[258]%D2.6.2
+        RAM[259]%D2.6.2 RAM[260]%D2.6.2 RAM[261]%D2.6.2;
+output;
@@ -0,0 +1,231 @@
+package proj11;
+
+// Ast.java
+import java.util.List;
+
+/**
+ * Jack语言的抽象语法树（AST）。
+ * AstBuilder 把一个类解析为 Ast.ClassNode，AstOptimizer 在树上进行优化，CodeGenerator 再从树生成VM代码。
+ * 每种语法结构对应一个节点类：语句节点继承 Statement，表达式节点继承 Expression。
+ * 节点创建后不再修改，优化时生成新的节点。
+ */
+public final class Ast {
+    private Ast() {
+    }
+
+    /**
+     * 一个类：类名、静态变量和字段声明、子程序。
+     */
+    public static class ClassNode {
+        public final String name;
+        public final List<VarDec> classVars;
+        public final List<Subroutine> subroutines;
+
+        public ClassNode(String name, List<VarDec> classVars, List<Subroutine> subroutines) {
+            this.name = name;
+            this.classVars = classVars;
+            this.subroutines = subroutines;
+        }
+    }
+
+    /**
+     * 一条变量声明：static、field 或 var，声明的若干个变量类型相同。
+     */
+    public static class VarDec {
+        public final SymbolTable.Kind kind;
+        public final String type;
+        public final List<String> names;
+
+        public VarDec(SymbolTable.Kind kind, String type, List<String> names) {
+            this.kind = kind;
+            this.type = type;
+            this.names = names;
+        }
+    }
+
+    /**
+     * 一个构造函数、函数或方法。
+     */
+    public static class Subroutine {
+        public final JackTokenizer.Keyword kind;
+        public final String returnType;
+        public final String name;
+        public final List<VarDec> parameters; // 每个参数一条 ARG 声明
+        public final List<VarDec> locals;
+        public final List<Statement> statements;
+
+        public Subroutine(JackTokenizer.Keyword kind, String returnType, String name, List<VarDec> parameters,
+                          List<VarDec> locals, List<Statement> statements) {
+            this.kind = kind;
+            this.returnType = returnType;
+            this.name = name;
+            this.parameters = parameters;
+            this.locals = locals;
+            this.statements = statements;
+        }
+
+        public Subroutine withStatements(List<Statement> statements) {
+            return new Subroutine(kind, returnType, name, parameters, locals, statements);
+        }
+    }
+
+    // --- 语句 ---
+
+    public abstract static class Statement {
+    }
+
+    /** let name = value; 或 let name[index] = value; （index 为 null 表示普通变量） */
+    public static class Let extends Statement {
+        public final String name;
+        public final Expression index;
+        public final Expression value;
+
+        public Let(String name, Expression index, Expression value) {
+            this.name = name;
+            this.index = index;
+            this.value = value;
+        }
+    }
+
+    /** if (condition) { thenStatements } else { elseStatements } （没有 else 时 elseStatements 为 null） */
+    public static class If extends Statement {
+        public final Expression condition;
+        public final List<Statement> thenStatements;
+        public final List<Statement> elseStatements;
+
+        public If(Expression condition, List<Statement> thenStatements, List<Statement> elseStatements) {
+            this.condition = condition;
+            this.thenStatements = thenStatements;
+            this.elseStatements = elseStatements;
+        }
+    }
+
+    /** while (condition) { body } */
+    public static class While extends Statement {
+        public final Expression condition;
+        public final List<Statement> body;
+
+        public While(Expression condition, List<Statement> body) {
+            this.condition = condition;
+            this.body = body;
+        }
+    }
+
+    /** do call; 返回值被丢弃 */
+    public static class Do extends Statement {
+        public final Expression call;
+
+        public Do(Expression call) {
+            this.call = call;
+        }
+    }
+
+    /** return; 或 return value; （value 为 null 表示没有返回值） */
+    public static class Return extends Statement {
+        public final Expression value;
+
+        public Return(Expression value) {
+            this.value = value;
+        }
+    }
+
+    // --- 表达式 ---
+
+    public abstract static class Expression {
+    }
+
+    /** 整数常量；常量折叠的结果可能为负数，取值范围为16位有符号整数 */
+    public static class IntConstant extends Expression {
+        public final int value;
+
+        public IntConstant(int value) {
+            this.value = value;
+        }
+    }
+
+    /** 字符串常量（不含双引号） */
+    public static class StringConstant extends Expression {
+        public final String value;
+
+        public StringConstant(String value) {
+            this.value = value;
+        }
+    }
+
+    /** true、false、null 或 this */
+    public static class KeywordConstant extends Expression {
+        public final JackTokenizer.Keyword keyword;
+
+        public KeywordConstant(JackTokenizer.Keyword keyword) {
+            this.keyword = keyword;
+        }
+    }
+
+    /** 变量 */
+    public static class VarRef extends Expression {
+        public final String name;
+
+        public VarRef(String name) {
+            this.name = name;
+        }
+    }
+
+    /** 数组元素 name[index] */
+    public static class ArrayRef extends Expression {
+        public final String name;
+        public final Expression index;
+
+        public ArrayRef(String name, Expression index) {
+            this.name = name;
+            this.index = index;
+        }
+    }
+
+    /** 子程序调用 target.name(arguments)；target 为 null 表示在当前对象上调用方法 name(arguments) */
+    public static class Call extends Expression {
+        public final String target;
+        public final String name;
+        public final List<Expression> arguments;
+
+        public Call(String target, String name, List<Expression> arguments) {
+            this.target = target;
+            this.name = name;
+            this.arguments = arguments;
+        }
+    }
+
+    /** 一元运算 -operand 或 ~operand */
+    public static class Unary extends Expression {
+        public final char op;
+        public final Expression operand;
+
+        public Unary(char op, Expression operand) {
+            this.op = op;
+            this.operand = operand;
+        }
+    }
+
+    /** 二元运算 left op right；Jack 没有优先级，从左到右结合 */
+    public static class Binary extends Expression {
+        public final Expression left;
+        public final char op;
+        public final Expression right;
+
+        public Binary(Expression left, char op, Expression right) {
+            this.left = left;
+            this.op = op;
+            this.right = right;
+        }
+    }
+
+    /** operand * 2^bits，由 AstOptimizer 从乘法得到，生成为 bits 次自加而不调用 Math.multiply */
+    public static class ShiftLeft extends Expression {
+        public final Expression operand;
+        public final int bits;
+
+        public ShiftLeft(Expression operand, int bits) {
+            this.operand = operand;
+            this.bits = bits;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package proj11;
+
+// AstBuilder.java
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 语法分析器（AST版本）。
+ * 与 CompilationEngine 使用相同的递归下降文法，但不直接生成VM代码，而是把一个类解析为 Ast.ClassNode，
+ * 以便在生成代码之前由 AstOptimizer 进行优化。
+ */
+public class AstBuilder {
+    private JackTokenizer tokenizer;
+
+    /**
+     * 构造函数，加载第一个词法单元。
+     */
+    public AstBuilder(JackTokenizer tokenizer) {
+        this.tokenizer = tokenizer;
+        tokenizer.advance();
+    }
+
+    /**
+     * 解析一个完整的类。
+     * 语法: 'class' className '{' classVarDec* subroutineDec* '}'
+     * @return 类的语法树
+     */
+    public Ast.ClassNode parseClass() {
+        tokenizer.advance(); // class
+        String name = tokenizer.identifier();
+        tokenizer.advance();
+        tokenizer.advance(); // {
+
+        List<Ast.VarDec> classVars = new ArrayList<>();
+        while (tokenizer.keyword() == JackTokenizer.Keyword.STATIC || tokenizer.keyword() == JackTokenizer.Keyword.FIELD) {
+            SymbolTable.Kind kind = tokenizer.keyword() == JackTokenizer.Keyword.STATIC ? SymbolTable.Kind.STATIC : SymbolTable.Kind.FIELD;
+            tokenizer.advance();
+            classVars.add(parseVarDec(kind));
+        }
+        List<Ast.Subroutine> subroutines = new ArrayList<>();
+        while (tokenizer.keyword() == JackTokenizer.Keyword.CONSTRUCTOR || tokenizer.keyword() == JackTokenizer.Keyword.FUNCTION || tokenizer.keyword() == JackTokenizer.Keyword.METHOD) {
+            subroutines.add(parseSubroutine());
+        }
+
+        tokenizer.advance(); // }
+        return new Ast.ClassNode(name, classVars, subroutines);
+    }
+
+    // 解析 type varName (',' varName)* ';'，当前词法单元为类型
+    private Ast.VarDec parseVarDec(SymbolTable.Kind kind) {
+        String type = tokenizer.getCurrentToken();
+        tokenizer.advance();
+        List<String> names = new ArrayList<>();
+        names.add(tokenizer.identifier());
+        tokenizer.advance();
+        while (tokenizer.symbol() == ',') {
+            tokenizer.advance();
+            names.add(tokenizer.identifier());
+            tokenizer.advance();
+        }
+        tokenizer.advance(); // ;
+        return new Ast.VarDec(kind, type, names);
+    }
+
+    private Ast.Subroutine parseSubroutine() {
+        JackTokenizer.Keyword kind = tokenizer.keyword();
+        tokenizer.advance();
+        String returnType = tokenizer.getCurrentToken();
+        tokenizer.advance();
+        String name = tokenizer.identifier();
+        tokenizer.advance();
+
+        tokenizer.advance(); // (
+        List<Ast.VarDec> parameters = new ArrayList<>();
+        if (tokenizer.tokenType() != JackTokenizer.TokenType.SYMBOL || tokenizer.symbol() != ')') {
+            parameters.add(parseParameter());
+            while (tokenizer.symbol() == ',') {
+                tokenizer.advance();
+                parameters.add(parseParameter());
+            }
+        }
+        tokenizer.advance(); // )
+
+        tokenizer.advance(); // {
+        List<Ast.VarDec> locals = new ArrayList<>();
+        while (tokenizer.keyword() == JackTokenizer.Keyword.VAR) {
+            tokenizer.advance();
+            locals.add(parseVarDec(SymbolTable.Kind.VAR));
+        }
+        List<Ast.Statement> statements = parseStatements();
+        tokenizer.advance(); // }
+        return new Ast.Subroutine(kind, returnType, name, parameters, locals, statements);
+    }
+
+    private Ast.VarDec parseParameter() {
+        String type = tokenizer.getCurrentToken();
+        tokenizer.advance();
+        List<String> names = new ArrayList<>();
+        names.add(tokenizer.identifier());
+        tokenizer.advance();
+        return new Ast.VarDec(SymbolTable.Kind.ARG, type, names);
+    }
+
+    private List<Ast.Statement> parseStatements() {
+        List<Ast.Statement> statements = new ArrayList<>();
+        while (tokenizer.tokenType() == JackTokenizer.TokenType.KEYWORD) {
+            switch (tokenizer.keyword()) {
+                case LET: statements.add(parseLet()); break;
+                case IF: statements.add(parseIf()); break;
+                case WHILE: statements.add(parseWhile()); break;
+                case DO: statements.add(parseDo()); break;
+                case RETURN: statements.add(parseReturn()); break;
+                default: return statements; // 非语句，结束
+            }
+        }
+        return statements;
+    }
+
+    private Ast.Statement parseLet() {
+        tokenizer.advance(); // let
+        String name = tokenizer.identifier();
+        tokenizer.advance();
+        Ast.Expression index = null;
+        if (tokenizer.symbol() == '[') {
+            tokenizer.advance();
+            index = parseExpression();
+            tokenizer.advance(); // ]
+        }
+        tokenizer.advance(); // =
+        Ast.Expression value = parseExpression();
+        tokenizer.advance(); // ;
+        return new Ast.Let(name, index, value);
+    }
+
+    private Ast.Statement parseIf() {
+        tokenizer.advance(); // if
+        Ast.Expression condition = parseCondition();
+        List<Ast.Statement> thenStatements = parseBlock();
+        List<Ast.Statement> elseStatements = null;
+        if (tokenizer.keyword() == JackTokenizer.Keyword.ELSE) {
+            tokenizer.advance();
+            elseStatements = parseBlock();
+        }
+        return new Ast.If(condition, thenStatements, elseStatements);
+    }
+
+    private Ast.Statement parseWhile() {
+        tokenizer.advance(); // while
+        Ast.Expression condition = parseCondition();
+        return new Ast.While(condition, parseBlock());
+    }
+
+    // 解析 '(' expression ')'
+    private Ast.Expression parseCondition() {
+        tokenizer.advance(); // (
+        Ast.Expression condition = parseExpression();
+        tokenizer.advance(); // )
+        return condition;
+    }
+
+    // 解析 '{' statements '}'
+    private List<Ast.Statement> parseBlock() {
+        tokenizer.advance(); // {
+        List<Ast.Statement> statements = parseStatements();
+        tokenizer.advance(); // }
+        return statements;
+    }
+
+    private Ast.Statement parseDo() {
+        tokenizer.advance(); // do
+        Ast.Expression call = parseTerm();
+        tokenizer.advance(); // ;
+        return new Ast.Do(call);
+    }
+
+    private Ast.Statement parseReturn() {
+        tokenizer.advance(); // return
+        Ast.Expression value = null;
+        if (tokenizer.tokenType() != JackTokenizer.TokenType.SYMBOL || tokenizer.symbol() != ';') {
+            value = parseExpression();
+        }
+        tokenizer.advance(); // ;
+        return new Ast.Return(value);
+    }
+
+    /**
+     * 解析表达式 term (op term)*，按从左到右的顺序结合。
+     */
+    private Ast.Expression parseExpression() {
+        Ast.Expression expression = parseTerm();
+        while (tokenizer.tokenType() == JackTokenizer.TokenType.SYMBOL && CompilationEngine.isBinaryOp(tokenizer.symbol())) {
+            char op = tokenizer.symbol();
+            tokenizer.advance();
+            expression = new Ast.Binary(expression, op, parseTerm());
+        }
+        return expression;
+    }
+
+    private Ast.Expression parseTerm() {
+        Ast.Expression term;
+        switch (tokenizer.tokenType()) {
+            case INT_CONST:
+                term = new Ast.IntConstant(tokenizer.intVal());
+                break;
+            case STRING_CONST:
+                term = new Ast.StringConstant(tokenizer.stringVal());
+                break;
+            case KEYWORD:
+                term = new Ast.KeywordConstant(tokenizer.keyword());
+                break;
+            case SYMBOL:
+                char symbol = tokenizer.symbol();
+                tokenizer.advance();
+                if (symbol == '(') { // (expression)
+                    term = parseExpression();
+                    tokenizer.advance(); // )
+                    return term;
+                }
+                return new Ast.Unary(symbol, parseTerm()); // unaryOp term
+            default: // IDENTIFIER
+                char next = tokenizer.peekSymbol();
+                if (next == '(' || next == '.') { // 子程序调用
+                    return parseCall();
+                }
+                String name = tokenizer.identifier();
+                tokenizer.advance();
+                if (next == '[') { // 数组访问 var[expr]
+                    tokenizer.advance(); // [
+                    term = new Ast.ArrayRef(name, parseExpression());
+                    tokenizer.advance(); // ]
+                    return term;
+                }
+                return new Ast.VarRef(name);
+        }
+        tokenizer.advance();
+        return term;
+    }
+
+    private Ast.Expression parseCall() {
+        String first = tokenizer.identifier();
+        tokenizer.advance();
+        String target = null;
+        String name = first;
+        if (tokenizer.symbol() == '.') { // 形式: obj.method() 或 Class.func()
+            tokenizer.advance();
+            target = first;
+            name = tokenizer.identifier();
+            tokenizer.advance();
+        }
+
+        tokenizer.advance(); // (
+        List<Ast.Expression> arguments = new ArrayList<>();
+        if (tokenizer.tokenType() != JackTokenizer.TokenType.SYMBOL || tokenizer.symbol() != ')') {
+            arguments.add(parseExpression());
+            while (tokenizer.symbol() == ',') {
+                tokenizer.advance();
+                arguments.add(parseExpression());
+            }
+        }
+        tokenizer.advance(); // )
+        return new Ast.Call(target, name, arguments);
+    }
+}
@@ -0,0 +1,192 @@
+package proj11;
+
+// AstOptimizer.java
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 语法树优化器。
+ * 在生成VM代码之前对 AstBuilder 生成的语法树进行以下几遍优化：
+ * 1. 常量折叠：操作数都是常量的一元、二元运算在编译时按16位有符号整数求值，x + 0、x - 0 化简为 x；
+ * 2. 强度削弱：乘以 2 的幂改为若干次自加，x * 1、x / 1 化简为 x，变量乘以 0 化简为 0，不再调用 Math.multiply/Math.divide；
+ * 3. 删除常量条件的分支：条件为常量的 if 只保留会执行的分支，条件为假的 while 整个删除。
+ * Hack 平台没有移位指令，除以其他 2 的幂仍然调用 Math.divide。
+ * 生成的代码中 if/while 在条件值为 true（-1）时才进入分支，因此只有常量 -1 视为真，其他常量都视为假。
+ */
+public class AstOptimizer {
+    private int folded;
+    private int reduced;
+    private int branches;
+
+    /**
+     * 优化一个类。
+     * @param classNode 类的语法树
+     * @return 优化后的语法树
+     */
+    public Ast.ClassNode optimize(Ast.ClassNode classNode) {
+        List<Ast.Subroutine> subroutines = new ArrayList<>();
+        for (Ast.Subroutine subroutine : classNode.subroutines) {
+            subroutines.add(subroutine.withStatements(optimize(subroutine.statements)));
+        }
+        return new Ast.ClassNode(classNode.name, classNode.classVars, subroutines);
+    }
+
+    /**
+     * @return 各项优化的次数
+     */
+    public String report() {
+        return String.format("常量折叠 %d 处，乘除法强度削弱 %d 处，删除常量条件的分支 %d 处", folded, reduced, branches);
+    }
+
+    private List<Ast.Statement> optimize(List<Ast.Statement> statements) {
+        List<Ast.Statement> result = new ArrayList<>();
+        for (Ast.Statement statement : statements) {
+            if (statement instanceof Ast.Let) {
+                Ast.Let let = (Ast.Let) statement;
+                result.add(new Ast.Let(let.name, let.index == null ? null : optimize(let.index), optimize(let.value)));
+            } else if (statement instanceof Ast.If) {
+                Ast.If ifStatement = (Ast.If) statement;
+                Ast.Expression condition = optimize(ifStatement.condition);
+                List<Ast.Statement> thenStatements = optimize(ifStatement.thenStatements);
+                List<Ast.Statement> elseStatements = ifStatement.elseStatements == null ? null : optimize(ifStatement.elseStatements);
+                Integer value = constantValue(condition);
+                if (value == null) {
+                    result.add(new Ast.If(condition, thenStatements, elseStatements));
+                } else {
+                    branches++;
+                    result.addAll(value == -1 ? thenStatements : elseStatements == null ? Collections.emptyList() : elseStatements);
+                }
+            } else if (statement instanceof Ast.While) {
+                Ast.While whileStatement = (Ast.While) statement;
+                Ast.Expression condition = optimize(whileStatement.condition);
+                Integer value = constantValue(condition);
+                if (value != null && value != -1) {
+                    branches++; // 循环体一次也不执行
+                } else {
+                    result.add(new Ast.While(condition, optimize(whileStatement.body)));
+                }
+            } else if (statement instanceof Ast.Do) {
+                result.add(new Ast.Do(optimize(((Ast.Do) statement).call)));
+            } else {
+                Ast.Return ret = (Ast.Return) statement;
+                result.add(new Ast.Return(ret.value == null ? null : optimize(ret.value)));
+            }
+        }
+        return result;
+    }
+
+    private Ast.Expression optimize(Ast.Expression expression) {
+        if (expression instanceof Ast.ArrayRef) {
+            Ast.ArrayRef array = (Ast.ArrayRef) expression;
+            return new Ast.ArrayRef(array.name, optimize(array.index));
+        } else if (expression instanceof Ast.Call) {
+            Ast.Call call = (Ast.Call) expression;
+            List<Ast.Expression> arguments = new ArrayList<>();
+            for (Ast.Expression argument : call.arguments) {
+                arguments.add(optimize(argument));
+            }
+            return new Ast.Call(call.target, call.name, arguments);
+        } else if (expression instanceof Ast.Unary) {
+            Ast.Unary unary = (Ast.Unary) expression;
+            Ast.Expression operand = optimize(unary.operand);
+            Integer value = constantValue(operand);
+            if (value != null) {
+                folded++;
+                return new Ast.IntConstant((short) (unary.op == '-' ? -value : ~value));
+            }
+            return new Ast.Unary(unary.op, operand);
+        } else if (expression instanceof Ast.Binary) {
+            Ast.Binary binary = (Ast.Binary) expression;
+            return optimize(optimize(binary.left), binary.op, optimize(binary.right));
+        }
+        return expression;
+    }
+
+    // 化简操作数已经优化过的二元运算
+    private Ast.Expression optimize(Ast.Expression left, char op, Ast.Expression right) {
+        Integer l = constantValue(left);
+        Integer r = constantValue(right);
+        if (l != null && r != null) {
+            Integer value = fold(l, op, r);
+            if (value != null) {
+                folded++;
+                return new Ast.IntConstant(value);
+            }
+        }
+        switch (op) {
+            case '+':
+                if (r != null && r == 0 || l != null && l == 0) {
+                    folded++;
+                    return r != null && r == 0 ? left : right;
+                }
+                break;
+            case '-':
+                if (r != null && r == 0) {
+                    folded++;
+                    return left;
+                }
+                break;
+            case '*':
+                // 常量没有副作用，可以交换两个操作数的计算顺序
+                Ast.Expression product = r != null ? multiply(left, r) : l != null ? multiply(right, l) : null;
+                if (product != null) {
+                    return product;
+                }
+                break;
+            case '/':
+                if (r != null && r == 1) {
+                    reduced++;
+                    return left;
+                }
+                break;
+        }
+        return new Ast.Binary(left, op, right);
+    }
+
+    // operand * constant：乘以 2 的幂改为自加，乘以 0 的变量化简为 0；不能化简时返回 null
+    private Ast.Expression multiply(Ast.Expression operand, int constant) {
+        if (constant == 0 && operand instanceof Ast.VarRef) {
+            reduced++;
+            return new Ast.IntConstant(0);
+        }
+        if (constant > 0 && Integer.bitCount(constant) == 1) {
+            reduced++;
+            int bits = Integer.numberOfTrailingZeros(constant);
+            return bits == 0 ? operand : new Ast.ShiftLeft(operand, bits);
+        }
+        return null;
+    }
+
+    // 按16位有符号整数求值；除数为 0 时不折叠，留到运行时由 Math.divide 报错
+    private static Integer fold(int l, char op, int r) {
+        switch (op) {
+            case '+': return (int) (short) (l + r);
+            case '-': return (int) (short) (l - r);
+            case '*': return (int) (short) (l * r);
+            case '/': return r == 0 ? null : (int) (short) (l / r);
+            case '&': return l & r;
+            case '|': return l | r;
+            case '<': return l < r ? -1 : 0;
+            case '>': return l > r ? -1 : 0;
+            case '=': return l == r ? -1 : 0;
+            default: return null;
+        }
+    }
+
+    // 表达式为常量时返回它的值，否则返回 null；true 为 -1，false 和 null 为 0
+    private static Integer constantValue(Ast.Expression expression) {
+        if (expression instanceof Ast.IntConstant) {
+            return ((Ast.IntConstant) expression).value;
+        }
+        if (expression instanceof Ast.KeywordConstant) {
+            switch (((Ast.KeywordConstant) expression).keyword) {
+                case TRUE: return -1;
+                case FALSE:
+                case NULL: return 0;
+                default: return null;
+            }
+        }
+        return null;
+    }
+}
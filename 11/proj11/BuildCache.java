@@ -0,0 +1,163 @@
+package proj11;
+
+// BuildCache.java
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 增量编译缓存。
+ * 保存在源文件目录下的 .jackcache 文件中，每个 .jack 文件一条记录：
+ * 源文件的哈希、编译生成的 .vm 文件的哈希、本类签名（各子程序的种类和参数个数、字段数）的哈希，
+ * 以及编译时引用的其他类及其当时的签名哈希。
+ * 源文件或 .vm 文件与记录不符、编译选项或缓存版本改变时需要重新编译；
+ * 引用的类的签名改变时，引用它的类也需要重新编译。
+ */
+public class BuildCache {
+
+    /** 缓存文件名 */
+    public static final String FILE_NAME = ".jackcache";
+
+    // 缓存格式或编译器生成的代码改变时加 1，使旧的缓存全部失效
+    private static final int VERSION = 1;
+
+    /**
+     * 一个 .jack 文件的缓存记录。
+     */
+    public static class Entry {
+        /** 源文件的哈希 */
+        public final String source;
+        /** 生成的 .vm 文件的哈希 */
+        public final String output;
+        /** 本类签名的哈希 */
+        public final String signature;
+        /** 引用的类名 -> 编译时该类签名的哈希 */
+        public final Map<String, String> dependencies;
+
+        public Entry(String source, String output, String signature, Map<String, String> dependencies) {
+            this.source = source;
+            this.output = output;
+            this.signature = signature;
+            this.dependencies = dependencies;
+        }
+    }
+
+    private final File file;
+    private final String options;
+    // 文件名（如 Main.jack） -> 缓存记录，按文件名排序保存
+    private final Map<String, Entry> entries = new TreeMap<>();
+
+    private BuildCache(File file, String options) {
+        this.file = file;
+        this.options = options;
+    }
+
+    /**
+     * 读取目录中的缓存；缓存不存在、版本或编译选项不同时返回空缓存。
+     * @param directory 源文件所在的目录
+     * @param options 影响生成代码的编译选项
+     * @return 缓存
+     * @throws IOException 如果读取缓存文件失败
+     */
+    public static BuildCache load(File directory, String options) throws IOException {
+        BuildCache cache = new BuildCache(new File(directory, FILE_NAME), options);
+        if (!cache.file.isFile()) {
+            return cache;
+        }
+        List<String> lines = Files.readAllLines(cache.file.toPath(), StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !lines.get(0).equals(cache.header())) {
+            return cache;
+        }
+        // 每行：文件名 源文件哈希 .vm哈希 签名哈希 [类名=签名哈希]...
+        for (String line : lines.subList(1, lines.size())) {
+            String[] parts = line.split(" ");
+            if (parts.length < 4) {
+                continue;
+            }
+            Map<String, String> dependencies = new TreeMap<>();
+            for (int i = 4; i < parts.length; i++) {
+                int equals = parts[i].indexOf('=');
+                if (equals > 0) {
+                    dependencies.put(parts[i].substring(0, equals), parts[i].substring(equals + 1));
+                }
+            }
+            cache.entries.put(parts[0], new Entry(parts[1], parts[2], parts[3], dependencies));
+        }
+        return cache;
+    }
+
+    private String header() {
+        return "# jackcache " + VERSION + " options=" + options;
+    }
+
+    /**
+     * @param name 文件名，例如 Main.jack
+     * @return 该文件的缓存记录，没有时返回 null
+     */
+    public Entry get(String name) {
+        return entries.get(name);
+    }
+
+    public void put(String name, Entry entry) {
+        entries.put(name, entry);
+    }
+
+    public void remove(String name) {
+        entries.remove(name);
+    }
+
+    /**
+     * 把缓存写回文件，只保留本次编译中出现的文件的记录：已删除或改名的 .jack 文件的记录随之丢弃。
+     * @param names 本次编译的全部文件名，例如 Main.jack
+     * @throws IOException 如果写入失败
+     */
+    public void save(Collection<String> names) throws IOException {
+        entries.keySet().retainAll(names);
+        List<String> lines = new ArrayList<>();
+        lines.add(header());
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            Entry entry = e.getValue();
+            StringBuilder line = new StringBuilder(e.getKey()).append(' ').append(entry.source)
+                    .append(' ').append(entry.output).append(' ').append(entry.signature);
+            for (Map.Entry<String, String> dependency : entry.dependencies.entrySet()) {
+                line.append(' ').append(dependency.getKey()).append('=').append(dependency.getValue());
+            }
+            lines.add(line.toString());
+        }
+        Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param file 文件
+     * @return 文件内容的哈希；文件不存在时返回 null
+     * @throws IOException 如果读取失败
+     */
+    public static String hash(File file) throws IOException {
+        return file.isFile() ? hash(Files.readAllBytes(file.toPath())) : null;
+    }
+
+    /**
+     * @param data 数据
+     * @return 数据的 SHA-256 哈希，十六进制字符串
+     */
+    public static String hash(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // 每个 Java 平台都必须支持 SHA-256
+        }
+    }
+}
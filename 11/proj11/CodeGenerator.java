@@ -0,0 +1,321 @@
+package proj11;
+
+// CodeGenerator.java
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * 代码生成器（AST版本）。
+ * 遍历 AstBuilder 生成（并可能经 AstOptimizer 优化）的语法树，利用 SymbolTable 和 VMWriter 生成VM代码。
+ * 对未经优化的语法树，生成的代码与 CompilationEngine 直接生成的完全相同。
+ */
+public class CodeGenerator {
+    private SymbolTable symbolTable;
+    private VMWriter vmWriter;
+    private String className;
+    private int labelCounter = 0;
+    // 不为 null 时字符串常量放入常量池
+    private StringPool stringPool;
+    private boolean stringPooling;
+    // 本类对外的签名和引用的其他类，与 CompilationEngine 的相同
+    private final StringBuilder signature = new StringBuilder();
+    private final Set<String> dependencies = new TreeSet<>();
+
+    public CodeGenerator(SymbolTable symbolTable, VMWriter vmWriter) {
+        this.symbolTable = symbolTable;
+        this.vmWriter = vmWriter;
+    }
+
+    /**
+     * 设置是否把字符串常量放入 StringPool，在 generate() 之前调用。
+     */
+    public void setStringPooling(boolean stringPooling) {
+        this.stringPooling = stringPooling;
+    }
+
+    // 辅助方法，用于生成唯一的标签名
+    private String newLabel() {
+        return "L" + (labelCounter++);
+    }
+
+    /**
+     * 为一个类生成VM代码。
+     * @param classNode 类的语法树
+     */
+    public void generate(Ast.ClassNode classNode) {
+        this.className = classNode.name;
+        for (Ast.VarDec varDec : classNode.classVars) {
+            define(varDec);
+        }
+        if (stringPooling) {
+            stringPool = new StringPool(vmWriter, symbolTable.varCount(SymbolTable.Kind.STATIC));
+        }
+        for (Ast.Subroutine subroutine : classNode.subroutines) {
+            generateSubroutine(subroutine);
+        }
+        signature.append("field ").append(symbolTable.varCount(SymbolTable.Kind.FIELD)).append('\n');
+    }
+
+    /**
+     * @return 本类对外的签名（各子程序的种类和参数个数、字段数），在 generate() 之后调用。
+     */
+    public String getSignature() {
+        return signature.toString();
+    }
+
+    /**
+     * @return 本类使用的静态变量数，包括字符串常量池占用的静态变量，在 generate() 之后调用。
+     */
+    public int getStaticCount() {
+        return stringPool != null ? stringPool.staticCount() : symbolTable.varCount(SymbolTable.Kind.STATIC);
+    }
+
+    /**
+     * @return 本类的子程序调用所引用的其他类名，按名称排序，在 generate() 之后调用。
+     */
+    public Set<String> getDependencies() {
+        return dependencies;
+    }
+
+    private void define(Ast.VarDec varDec) {
+        for (String name : varDec.names) {
+            symbolTable.define(name, varDec.type, varDec.kind);
+        }
+    }
+
+    private void generateSubroutine(Ast.Subroutine subroutine) {
+        symbolTable.startSubroutine(); // 开始新的子程序作用域
+        if (subroutine.kind == JackTokenizer.Keyword.METHOD) {
+            // 为方法的'this'参数在符号表中添加一项
+            symbolTable.define("this", className, SymbolTable.Kind.ARG);
+        }
+        for (Ast.VarDec parameter : subroutine.parameters) {
+            define(parameter);
+        }
+        String name = className + "." + subroutine.name;
+        signature.append(subroutine.kind.name().toLowerCase()).append(' ').append(name)
+                .append(' ').append(symbolTable.varCount(SymbolTable.Kind.ARG)).append('\n');
+
+        for (Ast.VarDec local : subroutine.locals) {
+            define(local);
+        }
+        vmWriter.writeFunction(name, symbolTable.varCount(SymbolTable.Kind.VAR));
+
+        // 为构造函数和方法生成初始化代码
+        if (subroutine.kind == JackTokenizer.Keyword.CONSTRUCTOR) {
+            vmWriter.writePush(VMWriter.Segment.CONST, symbolTable.varCount(SymbolTable.Kind.FIELD));
+            vmWriter.writeCall("Memory.alloc", 1);
+            vmWriter.writePop(VMWriter.Segment.POINTER, 0);
+        } else if (subroutine.kind == JackTokenizer.Keyword.METHOD) {
+            vmWriter.writePush(VMWriter.Segment.ARG, 0);
+            vmWriter.writePop(VMWriter.Segment.POINTER, 0);
+        }
+
+        generateStatements(subroutine.statements);
+    }
+
+    private void generateStatements(List<Ast.Statement> statements) {
+        for (Ast.Statement statement : statements) {
+            if (statement instanceof Ast.Let) {
+                generateLet((Ast.Let) statement);
+            } else if (statement instanceof Ast.If) {
+                generateIf((Ast.If) statement);
+            } else if (statement instanceof Ast.While) {
+                generateWhile((Ast.While) statement);
+            } else if (statement instanceof Ast.Do) {
+                generateExpression(((Ast.Do) statement).call);
+                vmWriter.writePop(VMWriter.Segment.TEMP, 0); // 丢弃返回值
+            } else {
+                Ast.Return ret = (Ast.Return) statement;
+                if (ret.value != null) {
+                    generateExpression(ret.value);
+                } else {
+                    vmWriter.writePush(VMWriter.Segment.CONST, 0); // void方法默认返回0
+                }
+                vmWriter.writeReturn();
+            }
+        }
+    }
+
+    private void generateLet(Ast.Let let) {
+        if (let.index != null) { // 数组赋值 let arr[expr1] = expr2;
+            generateExpression(let.index);
+            pushVar(let.name);
+            vmWriter.writeArithmetic(VMWriter.Command.ADD);
+            generateExpression(let.value);
+            vmWriter.writePop(VMWriter.Segment.TEMP, 0);
+            vmWriter.writePop(VMWriter.Segment.POINTER, 1);
+            vmWriter.writePush(VMWriter.Segment.TEMP, 0);
+            vmWriter.writePop(VMWriter.Segment.THAT, 0);
+        } else {
+            generateExpression(let.value);
+            popVar(let.name);
+        }
+    }
+
+    private void generateIf(Ast.If statement) {
+        String elseLabel = newLabel();
+        String endLabel = newLabel();
+        generateExpression(statement.condition);
+        vmWriter.writeArithmetic(VMWriter.Command.NOT);
+        vmWriter.writeIf(elseLabel);
+        generateStatements(statement.thenStatements);
+        vmWriter.writeGoto(endLabel);
+        vmWriter.writeLabel(elseLabel);
+        if (statement.elseStatements != null) {
+            generateStatements(statement.elseStatements);
+        }
+        vmWriter.writeLabel(endLabel);
+    }
+
+    private void generateWhile(Ast.While statement) {
+        String startLabel = newLabel();
+        String endLabel = newLabel();
+        vmWriter.writeLabel(startLabel);
+        generateExpression(statement.condition);
+        vmWriter.writeArithmetic(VMWriter.Command.NOT);
+        vmWriter.writeIf(endLabel);
+        generateStatements(statement.body);
+        vmWriter.writeGoto(startLabel);
+        vmWriter.writeLabel(endLabel);
+    }
+
+    private void generateExpression(Ast.Expression expression) {
+        if (expression instanceof Ast.IntConstant) {
+            pushConstant(((Ast.IntConstant) expression).value);
+        } else if (expression instanceof Ast.StringConstant) {
+            String str = ((Ast.StringConstant) expression).value;
+            if (stringPool != null) {
+                stringPool.writePush(str, newLabel());
+            } else {
+                StringPool.writeNew(vmWriter, str);
+            }
+        } else if (expression instanceof Ast.KeywordConstant) {
+            switch (((Ast.KeywordConstant) expression).keyword) {
+                case TRUE:
+                    vmWriter.writePush(VMWriter.Segment.CONST, 0);
+                    vmWriter.writeArithmetic(VMWriter.Command.NOT);
+                    break;
+                case FALSE:
+                case NULL:
+                    vmWriter.writePush(VMWriter.Segment.CONST, 0);
+                    break;
+                case THIS:
+                    vmWriter.writePush(VMWriter.Segment.POINTER, 0);
+                    break;
+            }
+        } else if (expression instanceof Ast.VarRef) {
+            pushVar(((Ast.VarRef) expression).name);
+        } else if (expression instanceof Ast.ArrayRef) {
+            Ast.ArrayRef array = (Ast.ArrayRef) expression;
+            generateExpression(array.index);
+            pushVar(array.name);
+            vmWriter.writeArithmetic(VMWriter.Command.ADD);
+            vmWriter.writePop(VMWriter.Segment.POINTER, 1);
+            vmWriter.writePush(VMWriter.Segment.THAT, 0);
+        } else if (expression instanceof Ast.Call) {
+            generateCall((Ast.Call) expression);
+        } else if (expression instanceof Ast.Unary) {
+            Ast.Unary unary = (Ast.Unary) expression;
+            generateExpression(unary.operand);
+            vmWriter.writeArithmetic(unary.op == '-' ? VMWriter.Command.NEG : VMWriter.Command.NOT);
+        } else if (expression instanceof Ast.Binary) {
+            Ast.Binary binary = (Ast.Binary) expression;
+            generateExpression(binary.left);
+            generateExpression(binary.right);
+            switch (binary.op) {
+                case '+': vmWriter.writeArithmetic(VMWriter.Command.ADD); break;
+                case '-': vmWriter.writeArithmetic(VMWriter.Command.SUB); break;
+                case '*': vmWriter.writeCall("Math.multiply", 2); break;
+                case '/': vmWriter.writeCall("Math.divide", 2); break;
+                case '&': vmWriter.writeArithmetic(VMWriter.Command.AND); break;
+                case '|': vmWriter.writeArithmetic(VMWriter.Command.OR); break;
+                case '<': vmWriter.writeArithmetic(VMWriter.Command.LT); break;
+                case '>': vmWriter.writeArithmetic(VMWriter.Command.GT); break;
+                case '=': vmWriter.writeArithmetic(VMWriter.Command.EQ); break;
+            }
+        } else {
+            generateShiftLeft((Ast.ShiftLeft) expression);
+        }
+    }
+
+    // 常量折叠的结果可能为负数，push constant 只接受 0..32767
+    private void pushConstant(int value) {
+        if (value >= 0) {
+            vmWriter.writePush(VMWriter.Segment.CONST, value);
+        } else if (value == -32768) {
+            vmWriter.writePush(VMWriter.Segment.CONST, 32767);
+            vmWriter.writeArithmetic(VMWriter.Command.NOT);
+        } else {
+            vmWriter.writePush(VMWriter.Segment.CONST, -value);
+            vmWriter.writeArithmetic(VMWriter.Command.NEG);
+        }
+    }
+
+    // operand * 2^bits：每次自加乘以 2。变量直接压栈两次；其他表达式只计算一次，经 temp 0 复制栈顶
+    private void generateShiftLeft(Ast.ShiftLeft shift) {
+        int bits = shift.bits;
+        generateExpression(shift.operand);
+        if (shift.operand instanceof Ast.VarRef) {
+            generateExpression(shift.operand);
+            vmWriter.writeArithmetic(VMWriter.Command.ADD);
+            bits--;
+        }
+        for (int i = 0; i < bits; i++) {
+            vmWriter.writePop(VMWriter.Segment.TEMP, 0);
+            vmWriter.writePush(VMWriter.Segment.TEMP, 0);
+            vmWriter.writePush(VMWriter.Segment.TEMP, 0);
+            vmWriter.writeArithmetic(VMWriter.Command.ADD);
+        }
+    }
+
+    private void generateCall(Ast.Call call) {
+        int nArgs = 0;
+        String callName;
+        if (call.target != null) { // 形式: obj.method() 或 Class.func()
+            SymbolTable.Kind kind = symbolTable.kindOf(call.target);
+            if (kind != SymbolTable.Kind.NONE) { // 是一个对象实例: obj.method()
+                nArgs = 1;
+                pushVar(call.target);
+                callName = symbolTable.typeOf(call.target) + "." + call.name;
+                dependencies.add(symbolTable.typeOf(call.target));
+            } else { // 是一个类名: Class.func()
+                callName = call.target + "." + call.name;
+                dependencies.add(call.target);
+            }
+        } else { // 形式: method()，在当前对象上调用
+            nArgs = 1;
+            vmWriter.writePush(VMWriter.Segment.POINTER, 0);
+            callName = className + "." + call.name;
+        }
+        for (Ast.Expression argument : call.arguments) {
+            generateExpression(argument);
+        }
+        vmWriter.writeCall(callName, nArgs + call.arguments.size());
+    }
+
+    // 辅助方法，用于将变量值压入栈
+    private void pushVar(String name) {
+        SymbolTable.Kind kind = symbolTable.kindOf(name);
+        int index = symbolTable.indexOf(name);
+        switch (kind) {
+            case STATIC: vmWriter.writePush(VMWriter.Segment.STATIC, index); break;
+            case FIELD: vmWriter.writePush(VMWriter.Segment.THIS, index); break;
+            case ARG: vmWriter.writePush(VMWriter.Segment.ARG, index); break;
+            case VAR: vmWriter.writePush(VMWriter.Segment.LOCAL, index); break;
+        }
+    }
+
+    // 辅助方法，用于将栈顶值弹出到变量
+    private void popVar(String name) {
+        SymbolTable.Kind kind = symbolTable.kindOf(name);
+        int index = symbolTable.indexOf(name);
+        switch (kind) {
+            case STATIC: vmWriter.writePop(VMWriter.Segment.STATIC, index); break;
+            case FIELD: vmWriter.writePop(VMWriter.Segment.THIS, index); break;
+            case ARG: vmWriter.writePop(VMWriter.Segment.ARG, index); break;
+            case VAR: vmWriter.writePop(VMWriter.Segment.LOCAL, index); break;
+        }
+    }
+}
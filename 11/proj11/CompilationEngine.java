@@ -6,6 +6,8 @@ import proj11.SymbolTable;
 import proj11.VMWriter;
 
 import java.io.IOException;
+import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * 编译引擎（代码生成器版本）。
@@ -17,6 +19,13 @@ public class CompilationEngine {
     private VMWriter vmWriter;
     private String className;
     private int labelCounter = 0;
+    // 不为 null 时字符串常量放入常量池
+    private StringPool stringPool;
+    private boolean stringPooling;
+    // 本类对外的签名：每个子程序一行 "种类 名称 参数个数"，最后一行为字段数
+    private final StringBuilder signature = new StringBuilder();
+    // compileCall() 中解析到的其他类
+    private final Set<String> dependencies = new TreeSet<>();
 
     /**
      * 构造函数，初始化编译引擎。
@@ -28,6 +37,13 @@ public class CompilationEngine {
         tokenizer.advance(); // 加载第一个词法单元
     }
 
+    /**
+     * 设置是否把字符串常量放入 StringPool，在 compileClass() 之前调用。
+     */
+    public void setStringPooling(boolean stringPooling) {
+        this.stringPooling = stringPooling;
+    }
+
     // 辅助方法，用于生成唯一的标签名
     private String newLabel() {
         return "L" + (labelCounter++);
@@ -50,23 +66,48 @@ public class CompilationEngine {
         process(className);
         process("{");
 
-        while (tokenizer.tokenType() == JackTokenizer.TokenType.KEYWORD && (tokenizer.keyword().equals("static") || tokenizer.keyword().equals("field"))) {
+        while (tokenizer.keyword() == JackTokenizer.Keyword.STATIC || tokenizer.keyword() == JackTokenizer.Keyword.FIELD) {
             compileClassVarDec();
         }
-        while (tokenizer.tokenType() == JackTokenizer.TokenType.KEYWORD && (tokenizer.keyword().equals("constructor") || tokenizer.keyword().equals("function") || tokenizer.keyword().equals("method"))) {
+        if (stringPooling) {
+            stringPool = new StringPool(vmWriter, symbolTable.varCount(SymbolTable.Kind.STATIC));
+        }
+        while (tokenizer.keyword() == JackTokenizer.Keyword.CONSTRUCTOR || tokenizer.keyword() == JackTokenizer.Keyword.FUNCTION || tokenizer.keyword() == JackTokenizer.Keyword.METHOD) {
             compileSubroutine();
         }
+        signature.append("field ").append(symbolTable.varCount(SymbolTable.Kind.FIELD)).append('\n');
 
         process("}");
     }
 
+    /**
+     * @return 本类对外的签名（各子程序的种类和参数个数、字段数），在 compileClass() 之后调用。
+     */
+    public String getSignature() {
+        return signature.toString();
+    }
+
+    /**
+     * @return 本类使用的静态变量数，包括字符串常量池占用的静态变量，在 compileClass() 之后调用。
+     */
+    public int getStaticCount() {
+        return stringPool != null ? stringPool.staticCount() : symbolTable.varCount(SymbolTable.Kind.STATIC);
+    }
+
+    /**
+     * @return 本类的子程序调用所引用的其他类名，按名称排序，在 compileClass() 之后调用。
+     */
+    public Set<String> getDependencies() {
+        return dependencies;
+    }
+
     /**
      * 编译一个静态变量或字段声明。
      * 这个阶段只填充符号表，不生成VM代码。
      */
     public void compileClassVarDec() {
-        SymbolTable.Kind kind = SymbolTable.Kind.valueOf(tokenizer.keyword().toUpperCase());
-        process(tokenizer.keyword()); // static or field
+        SymbolTable.Kind kind = tokenizer.keyword() == JackTokenizer.Keyword.STATIC ? SymbolTable.Kind.STATIC : SymbolTable.Kind.FIELD;
+        process(tokenizer.getCurrentToken()); // static or field
         String type = tokenizer.getCurrentToken();
         process(type); // type
         symbolTable.define(tokenizer.identifier(), type, kind);
@@ -85,10 +126,10 @@ public class CompilationEngine {
      */
     public void compileSubroutine() {
         symbolTable.startSubroutine(); // 开始新的子程序作用域
-        String subroutineType = tokenizer.keyword();
-        process(subroutineType);
+        JackTokenizer.Keyword subroutineType = tokenizer.keyword();
+        process(tokenizer.getCurrentToken());
 
-        if (subroutineType.equals("method")) {
+        if (subroutineType == JackTokenizer.Keyword.METHOD) {
             // 为方法的'this'参数在符号表中添加一项
             symbolTable.define("this", className, SymbolTable.Kind.ARG);
         }
@@ -100,6 +141,8 @@ public class CompilationEngine {
         process("(");
         compileParameterList();
         process(")");
+        signature.append(subroutineType.name().toLowerCase()).append(' ').append(subroutineName)
+                .append(' ').append(symbolTable.varCount(SymbolTable.Kind.ARG)).append('\n');
 
         compileSubroutineBody(subroutineName, subroutineType);
     }
@@ -127,10 +170,10 @@ public class CompilationEngine {
     /**
      * 编译子程序体。
      */
-    public void compileSubroutineBody(String name, String type) {
+    public void compileSubroutineBody(String name, JackTokenizer.Keyword type) {
         process("{");
         // 编译局部变量声明，并填充符号表
-        while (tokenizer.tokenType() == JackTokenizer.TokenType.KEYWORD && tokenizer.keyword().equals("var")) {
+        while (tokenizer.keyword() == JackTokenizer.Keyword.VAR) {
             compileVarDec();
         }
 
@@ -138,13 +181,13 @@ public class CompilationEngine {
         vmWriter.writeFunction(name, symbolTable.varCount(SymbolTable.Kind.VAR));
 
         // 为构造函数和方法生成初始化代码
-        if (type.equals("constructor")) {
+        if (type == JackTokenizer.Keyword.CONSTRUCTOR) {
             // 分配内存
             vmWriter.writePush(VMWriter.Segment.CONST, symbolTable.varCount(SymbolTable.Kind.FIELD));
             vmWriter.writeCall("Memory.alloc", 1);
             // 将'this'指向新分配的内存地址
             vmWriter.writePop(VMWriter.Segment.POINTER, 0);
-        } else if (type.equals("method")) {
+        } else if (type == JackTokenizer.Keyword.METHOD) {
             // 将第一个参数（隐式的'this'）设置为当前对象的基地址
             vmWriter.writePush(VMWriter.Segment.ARG, 0);
             vmWriter.writePop(VMWriter.Segment.POINTER, 0);
@@ -177,11 +220,11 @@ public class CompilationEngine {
     public void compileStatements() {
         while (tokenizer.tokenType() == JackTokenizer.TokenType.KEYWORD) {
             switch (tokenizer.keyword()) {
-                case "let": compileLet(); break;
-                case "if": compileIf(); break;
-                case "while": compileWhile(); break;
-                case "do": compileDo(); break;
-                case "return": compileReturn(); break;
+                case LET: compileLet(); break;
+                case IF: compileIf(); break;
+                case WHILE: compileWhile(); break;
+                case DO: compileDo(); break;
+                case RETURN: compileReturn(); break;
                 default: return; // 非语句，结束
             }
         }
@@ -242,7 +285,7 @@ public class CompilationEngine {
         vmWriter.writeGoto(endLabel); // 执行完if后，跳转到结尾
 
         vmWriter.writeLabel(elseLabel); // else代码块的标签
-        if (tokenizer.tokenType() == JackTokenizer.TokenType.KEYWORD && tokenizer.keyword().equals("else")) {
+        if (tokenizer.keyword() == JackTokenizer.Keyword.ELSE) {
             process("else");
             process("{");
             compileStatements();
@@ -304,76 +347,84 @@ public class CompilationEngine {
     public void compileExpression() {
         compileTerm();
         // 处理 (op term)* 部分
-        while (tokenizer.tokenType() == JackTokenizer.TokenType.SYMBOL && "+-*/&|<>=".indexOf(tokenizer.symbol()) != -1) {
-            String op = String.valueOf(tokenizer.symbol());
-            process(op);
+        while (tokenizer.tokenType() == JackTokenizer.TokenType.SYMBOL && isBinaryOp(tokenizer.symbol())) {
+            char op = tokenizer.symbol();
+            process(tokenizer.getCurrentToken());
             compileTerm();
             // 为操作符生成相应的VM命令
             switch (op) {
-                case "+": vmWriter.writeArithmetic(VMWriter.Command.ADD); break;
-                case "-": vmWriter.writeArithmetic(VMWriter.Command.SUB); break;
-                case "*": vmWriter.writeCall("Math.multiply", 2); break;
-                case "/": vmWriter.writeCall("Math.divide", 2); break;
-                case "&": vmWriter.writeArithmetic(VMWriter.Command.AND); break;
-                case "|": vmWriter.writeArithmetic(VMWriter.Command.OR); break;
-                case "<": vmWriter.writeArithmetic(VMWriter.Command.LT); break;
-                case ">": vmWriter.writeArithmetic(VMWriter.Command.GT); break;
-                case "=": vmWriter.writeArithmetic(VMWriter.Command.EQ); break;
+                case '+': vmWriter.writeArithmetic(VMWriter.Command.ADD); break;
+                case '-': vmWriter.writeArithmetic(VMWriter.Command.SUB); break;
+                case '*': vmWriter.writeCall("Math.multiply", 2); break;
+                case '/': vmWriter.writeCall("Math.divide", 2); break;
+                case '&': vmWriter.writeArithmetic(VMWriter.Command.AND); break;
+                case '|': vmWriter.writeArithmetic(VMWriter.Command.OR); break;
+                case '<': vmWriter.writeArithmetic(VMWriter.Command.LT); break;
+                case '>': vmWriter.writeArithmetic(VMWriter.Command.GT); break;
+                case '=': vmWriter.writeArithmetic(VMWriter.Command.EQ); break;
             }
         }
     }
 
+    // 辅助方法，判断符号是否为二元操作符
+    static boolean isBinaryOp(char symbol) {
+        switch (symbol) {
+            case '+': case '-': case '*': case '/': case '&': case '|': case '<': case '>': case '=':
+                return true;
+            default:
+                return false;
+        }
+    }
+
     /**
      * 编译一个term，这是表达式中最复杂的部分。
      */
     public void compileTerm() {
         JackTokenizer.TokenType type = tokenizer.tokenType();
-        String currentToken = tokenizer.getCurrentToken();
 
         if (type == JackTokenizer.TokenType.INT_CONST) {
             vmWriter.writePush(VMWriter.Segment.CONST, tokenizer.intVal());
-            process(currentToken);
+            process("integerConstant");
         } else if (type == JackTokenizer.TokenType.STRING_CONST) {
-            String str = tokenizer.stringVal();
-            vmWriter.writePush(VMWriter.Segment.CONST, str.length());
-            vmWriter.writeCall("String.new", 1);
-            for (char c : str.toCharArray()) {
-                vmWriter.writePush(VMWriter.Segment.CONST, c);
-                vmWriter.writeCall("String.appendChar", 2);
+            if (stringPool != null) {
+                stringPool.writePush(tokenizer.stringVal(), newLabel());
+            } else {
+                StringPool.writeNew(vmWriter, tokenizer.stringVal());
             }
-            process(currentToken);
+            process("stringConstant");
         } else if (type == JackTokenizer.TokenType.KEYWORD) {
             switch (tokenizer.keyword()) {
-                case "true":
+                case TRUE:
                     vmWriter.writePush(VMWriter.Segment.CONST, 0);
                     vmWriter.writeArithmetic(VMWriter.Command.NOT);
                     break;
-                case "false":
-                case "null":
+                case FALSE:
+                case NULL:
                     vmWriter.writePush(VMWriter.Segment.CONST, 0);
                     break;
-                case "this":
+                case THIS:
                     vmWriter.writePush(VMWriter.Segment.POINTER, 0);
                     break;
             }
-            process(currentToken);
+            process(tokenizer.getCurrentToken());
         } else if (type == JackTokenizer.TokenType.SYMBOL) {
-            if (currentToken.equals("(")) { // (expression)
+            char symbol = tokenizer.symbol();
+            if (symbol == '(') { // (expression)
                 process("(");
                 compileExpression();
                 process(")");
             } else { // unaryOp term
-                process(currentToken);
+                process(tokenizer.getCurrentToken());
                 compileTerm();
-                if (currentToken.equals("-")) {
+                if (symbol == '-') {
                     vmWriter.writeArithmetic(VMWriter.Command.NEG);
                 } else { // ~
                     vmWriter.writeArithmetic(VMWriter.Command.NOT);
                 }
             }
         } else { // IDENTIFIER
-            String nextToken = tokenizer.peek();
-            if (nextToken != null && nextToken.equals("[")) { // 数组访问 var[expr]
+            char next = tokenizer.peekSymbol();
+            if (next == '[') { // 数组访问 var[expr]
                 String varName = tokenizer.identifier();
                 process(varName);
                 process("[");
@@ -383,11 +434,12 @@ public class CompilationEngine {
                 vmWriter.writeArithmetic(VMWriter.Command.ADD); // 计算目标地址
                 vmWriter.writePop(VMWriter.Segment.POINTER, 1); // 将目标地址设为THAT
                 vmWriter.writePush(VMWriter.Segment.THAT, 0);   // 将数组元素压栈
-            } else if (nextToken != null && (nextToken.equals("(") || nextToken.equals("."))) { // 子程序调用
+            } else if (next == '(' || next == '.') { // 子程序调用
                 compileCall();
             } else { // 普通变量
-                pushVar(currentToken);
-                process(currentToken);
+                String varName = tokenizer.identifier();
+                pushVar(varName);
+                process(varName);
             }
         }
     }
@@ -411,8 +463,10 @@ public class CompilationEngine {
                 nArgs = 1; // 增加'this'参数
                 pushVar(first); // 将对象基地址作为第一个参数压栈
                 callName = symbolTable.typeOf(first) + "." + second;
+                dependencies.add(symbolTable.typeOf(first));
             } else { // 是一个类名: Class.func()
                 callName = first + "." + second;
+                dependencies.add(first);
             }
 
         } else { // 形式: method()，在当前对象上调用
@@ -7,23 +7,94 @@ import proj11.VMWriter;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Jack编译器的主驱动程序。
  * 负责协调Tokenizer, SymbolTable, VMWriter, 和 CompilationEngine来完成编译。
  * 它可以处理单个.jack文件或整个目录。
+ * 每个文件使用各自独立的实例编译，互不影响，因此可以用 -j N 在 N 个线程上并行编译。
+ * 各文件的输出信息和错误先分别收集，全部完成后按文件名顺序输出，与线程数和完成顺序无关；
+ * 最后输出墙钟时间和各文件 CPU 时间之和，用于估计并行的效果。
+ * 使用 -i 时进行增量编译：只重新编译源文件或 .vm 文件与 BuildCache 的记录不符的类，
+ * 以及引用的类的签名发生改变的类，其余的类直接跳过。
+ * 使用 -O 时先把每个类解析为语法树（AstBuilder），经 AstOptimizer 优化后再由 CodeGenerator 生成代码。
+ * 使用 -s 时把同一个类中相同的字符串常量放入 StringPool，第一次求值时创建，以后直接使用。
  */
 public class JackAnalyzer {
 
+    // 一个文件的编译结果：该文件的输出信息、错误信息，以及编译所用的 CPU 时间（纳秒）；
+    // 编译成功时还有本类的签名和引用的其他类。增量编译跳过的文件 compiled 为 false
+    private static class Result {
+        final StringWriter out = new StringWriter();
+        final StringWriter err = new StringWriter();
+        long cpuTime;
+        boolean compiled = true;
+        boolean succeeded;
+        String signature;
+        Set<String> dependencies;
+    }
+
+    // 影响生成代码的编译选项
+    private static class Options {
+        boolean optimize;
+        boolean poolStrings;
+
+        // 记录在增量编译缓存中，选项改变时全部重新编译
+        @Override
+        public String toString() {
+            return (optimize ? "-O" : "") + (poolStrings ? "-s" : "");
+        }
+    }
+
     public static void main(String[] args) {
-        if (args.length != 1) {
-            System.out.println("使用方法: java JackAnalyzer [file.jack | directory]");
+        int jobs = 1;
+        boolean incremental = false;
+        Options options = new Options();
+        String path = null;
+        boolean valid = true;
+        for (int i = 0; i < args.length && valid; i++) {
+            if (args[i].equals("-j") && i + 1 < args.length) {
+                try {
+                    jobs = Math.max(1, Integer.parseInt(args[++i]));
+                } catch (NumberFormatException e) {
+                    valid = false;
+                }
+            } else if (args[i].equals("-i")) {
+                incremental = true;
+            } else if (args[i].equals("-O")) {
+                options.optimize = true;
+            } else if (args[i].equals("-s")) {
+                options.poolStrings = true;
+            } else if (path == null && !args[i].startsWith("-")) {
+                path = args[i];
+            } else {
+                valid = false;
+            }
+        }
+        if (!valid || path == null) {
+            System.out.println("使用方法: java JackAnalyzer [-j N] [-i] [-O] [-s] [file.jack | directory]");
             return;
         }
 
-        File input = new File(args[0]);
+        File input = new File(path);
         List<File> jackFiles = new ArrayList<>();
 
         if (input.isDirectory()) {
@@ -33,6 +104,7 @@ public class JackAnalyzer {
                     jackFiles.add(file);
                 }
             }
+            jackFiles.sort(Comparator.comparing(File::getName)); // 按文件名排序，输出与目录遍历顺序无关
         } else if (input.isFile() && input.getName().endsWith(".jack")) {
             jackFiles.add(input);
         }
@@ -42,35 +114,232 @@ public class JackAnalyzer {
             return;
         }
 
-        for (File jackFile : jackFiles) {
-            // 根据输入文件名构造输出文件名，例如 "Main.jack" -> "Main.vm"
-            String outputFilePath = jackFile.getAbsolutePath().replace(".jack", ".vm");
-            System.out.println("正在编译: " + jackFile.getPath() + " -> " + outputFilePath);
-
-            VMWriter vmWriter = null;
+        long start = System.nanoTime();
+        List<Result> results;
+        if (incremental) {
             try {
-                // 为每个文件创建全新的实例
-                JackTokenizer tokenizer = new JackTokenizer(jackFile.getAbsolutePath());
-                SymbolTable symbolTable = new SymbolTable();
-                vmWriter = new VMWriter(outputFilePath);
+                results = compileIncrementally(jackFiles, jobs, options);
+            } catch (IOException e) {
+                System.err.println("读写增量编译缓存时发生错误: " + e.getMessage());
+                return;
+            }
+        } else {
+            results = compileAll(jackFiles, jobs, options);
+        }
+        long wallTime = System.nanoTime() - start;
+
+        long cpuTime = 0;
+        int compiled = 0;
+        for (Result result : results) {
+            System.out.print(result.out);
+            System.err.print(result.err);
+            cpuTime += result.cpuTime;
+            compiled += result.compiled ? 1 : 0;
+        }
+        if (incremental) {
+            System.out.printf("增量编译：重新编译 %d 个文件，跳过 %d 个%n", compiled, results.size() - compiled);
+        }
+        System.out.printf("编译了 %d 个文件，%d 个线程：墙钟时间 %.1f ms，各文件 CPU 时间合计 %.1f ms%n",
+                compiled, Math.max(1, Math.min(jobs, compiled)), wallTime / 1e6, cpuTime / 1e6);
+    }
+
+    // 增量编译：先编译源文件或 .vm 文件改变了的类，再编译引用的类签名改变了的类，最后更新缓存；结果按文件顺序返回
+    private static List<Result> compileIncrementally(List<File> jackFiles, int jobs, Options options) throws IOException {
+        File directory = jackFiles.get(0).getAbsoluteFile().getParentFile();
+        BuildCache cache = BuildCache.load(directory, options.toString());
+        int n = jackFiles.size();
+        Result[] results = new Result[n];
+        String[] sources = new String[n];
+
+        // 第一轮：源文件或 .vm 文件与缓存不符
+        List<Integer> changed = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            File jackFile = jackFiles.get(i);
+            sources[i] = BuildCache.hash(jackFile);
+            BuildCache.Entry entry = cache.get(jackFile.getName());
+            if (entry == null || !entry.source.equals(sources[i]) || !entry.output.equals(BuildCache.hash(outputFile(jackFile)))) {
+                changed.add(i);
+            }
+        }
+        compileSome(jackFiles, changed, jobs, options, results);
+
+        // 各类当前的签名：刚编译的类使用新的签名，其余的使用缓存中的签名
+        Map<String, String> signatures = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            BuildCache.Entry entry = cache.get(jackFiles.get(i).getName());
+            if (results[i] != null ? results[i].succeeded : entry != null) {
+                signatures.put(className(jackFiles.get(i)),
+                        results[i] != null ? BuildCache.hash(results[i].signature.getBytes(StandardCharsets.UTF_8)) : entry.signature);
+            }
+        }
+
+        // 第二轮：引用的类的签名改变了。重新编译不改变本类的签名，所以一轮就够了
+        List<Integer> dependents = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (results[i] != null) {
+                continue;
+            }
+            for (Map.Entry<String, String> dependency : cache.get(jackFiles.get(i).getName()).dependencies.entrySet()) {
+                if (!dependency.getValue().equals(signatures.get(dependency.getKey()))) {
+                    dependents.add(i);
+                    break;
+                }
+            }
+        }
+        compileSome(jackFiles, dependents, jobs, options, results);
+
+        // 更新缓存：只记录引用的类中属于本项目的类
+        List<Result> ordered = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < n; i++) {
+            File jackFile = jackFiles.get(i);
+            names.add(jackFile.getName());
+            Result result = results[i];
+            if (result == null) {
+                result = new Result();
+                result.compiled = false;
+                result.out.write("未改变，跳过: " + jackFile.getPath() + System.lineSeparator());
+            } else if (result.succeeded) {
+                Map<String, String> dependencies = new TreeMap<>();
+                for (String dependency : result.dependencies) {
+                    if (signatures.containsKey(dependency)) {
+                        dependencies.put(dependency, signatures.get(dependency));
+                    }
+                }
+                cache.put(jackFile.getName(), new BuildCache.Entry(sources[i], BuildCache.hash(outputFile(jackFile)),
+                        signatures.get(className(jackFile)), dependencies));
+            } else {
+                cache.remove(jackFile.getName()); // 编译失败，下次重新编译
+            }
+            ordered.add(result);
+        }
+        cache.save(names);
+        return ordered;
+    }
+
+    // 编译 indices 指定的文件，结果放入 results 的对应位置
+    private static void compileSome(List<File> jackFiles, List<Integer> indices, int jobs, Options options, Result[] results) {
+        List<File> files = new ArrayList<>();
+        for (int i : indices) {
+            files.add(jackFiles.get(i));
+        }
+        List<Result> compiled = compileAll(files, jobs, options);
+        for (int k = 0; k < indices.size(); k++) {
+            results[indices.get(k)] = compiled.get(k);
+        }
+    }
+
+    // 根据输入文件名构造输出文件名，例如 "Main.jack" -> "Main.vm"
+    private static File outputFile(File jackFile) {
+        return new File(jackFile.getAbsolutePath().replace(".jack", ".vm"));
+    }
+
+    private static String className(File jackFile) {
+        String name = jackFile.getName();
+        return name.substring(0, name.length() - ".jack".length());
+    }
+
+    // 编译全部文件，jobs 大于 1 时在线程池上并行编译；结果按文件顺序返回
+    private static List<Result> compileAll(List<File> jackFiles, int jobs, Options options) {
+        List<Result> results = new ArrayList<>();
+        if (jobs <= 1 || jackFiles.size() <= 1) {
+            for (File jackFile : jackFiles) {
+                results.add(compile(jackFile, options));
+            }
+            return results;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(jobs, jackFiles.size()));
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (File jackFile : jackFiles) {
+                futures.add(pool.submit(() -> compile(jackFile, options)));
+            }
+            for (Future<Result> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("编译被中断", e);
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause()); // compile 自己处理异常，这里只会是 Error
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return results;
+    }
+
+    // 编译一个文件，输出信息和错误写入返回的结果而不是直接输出
+    private static Result compile(File jackFile, Options options) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long start = threads.getCurrentThreadCpuTime();
+        Result result = new Result();
+        PrintWriter out = new PrintWriter(result.out);
+        PrintWriter err = new PrintWriter(result.err);
+
+        String outputFilePath = outputFile(jackFile).getPath();
+        out.println("正在编译: " + jackFile.getPath() + " -> " + outputFilePath);
+
+        VMWriter vmWriter = null;
+        try {
+            // 为每个文件创建全新的实例
+            JackTokenizer tokenizer = new JackTokenizer(jackFile.getAbsolutePath());
+            SymbolTable symbolTable = new SymbolTable();
+            vmWriter = new VMWriter(outputFilePath);
+            int statics;
+            if (options.optimize) {
+                // 解析为语法树，优化后再生成代码
+                Ast.ClassNode classNode = new AstBuilder(tokenizer).parseClass();
+                AstOptimizer optimizer = new AstOptimizer();
+                classNode = optimizer.optimize(classNode);
+                CodeGenerator generator = new CodeGenerator(symbolTable, vmWriter);
+                generator.setStringPooling(options.poolStrings);
+                generator.generate(classNode);
+                out.println("优化: " + optimizer.report());
+                result.signature = generator.getSignature();
+                result.dependencies = generator.getDependencies();
+                statics = generator.getStaticCount();
+            } else {
                 CompilationEngine engine = new CompilationEngine(tokenizer, symbolTable, vmWriter);
+                engine.setStringPooling(options.poolStrings);
 
                 // 从顶层的 'class' 规则开始编译
                 engine.compileClass();
+                result.signature = engine.getSignature();
+                result.dependencies = engine.getDependencies();
+                statics = engine.getStaticCount();
+            }
+            if (statics > StringPool.STATIC_WARNING) {
+                // 所有类的静态变量共用 RAM 16-255，超出后 VM 翻译器分配的地址会与堆栈重叠
+                out.println("警告: " + jackFile.getName() + " 使用了 " + statics + " 个静态变量，所有类一共只有 240 个");
+            }
+            result.succeeded = true;
 
-                System.out.println("成功编译: " + outputFilePath);
+            out.println("成功编译: " + outputFilePath);
 
-            } catch (IOException e) {
-                System.err.println("处理文件时发生错误 " + jackFile.getPath() + ": " + e.getMessage());
-            } catch (Exception e) {
-                System.err.println("在 " + jackFile.getPath() + " 中发生编译错误: " + e.getMessage());
-                e.printStackTrace();
-            } finally {
-                // 确保无论成功还是失败，文件写入器都被正确关闭
-                if (vmWriter != null) {
-                    vmWriter.close();
+        } catch (IOException e) {
+            err.println("处理文件时发生错误 " + jackFile.getPath() + ": " + e.getMessage());
+        } catch (Exception e) {
+            err.println("在 " + jackFile.getPath() + " 中发生编译错误: " + e.getMessage());
+            // 只保留到 compile 为止的调用栈，使并行与顺序编译输出相同的诊断信息
+            StackTraceElement[] trace = e.getStackTrace();
+            for (int i = 0; i < trace.length; i++) {
+                if (trace[i].getClassName().equals(JackAnalyzer.class.getName()) && trace[i].getMethodName().equals("compile")) {
+                    e.setStackTrace(Arrays.copyOf(trace, i + 1));
+                    break;
                 }
             }
+            e.printStackTrace(err);
+        } finally {
+            // 确保无论成功还是失败，文件写入器都被正确关闭
+            if (vmWriter != null) {
+                vmWriter.close();
+            }
         }
+        out.flush();
+        err.flush();
+        result.cpuTime = threads.getCurrentThreadCpuTime() - start;
+        return result;
     }
-}
\ No newline at end of file
+}
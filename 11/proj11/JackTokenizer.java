@@ -1,19 +1,19 @@
 package proj11;
 
 // JackTokenizer.java
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Arrays;
 
 /**
  * Jack词法分析器 (Tokenizer)。
  * 负责读取一个.jack源文件，将其分解为一系列的Jack词法单元（tokens）。
- * 这个类会处理并移除所有的注释和空白符。
+ * 源文件只扫描一遍：用一个按字符转移的有限状态机同时跳过空白符和注释、识别词法单元，不使用正则表达式。
+ * 词法单元保存在几个并行的基本类型数组中（类型、起止位置、行号、值），
+ * 关键字和符号在扫描时就确定编号，整数常量在扫描时就求出值，不为每个词法单元创建字符串。
  */
 public class JackTokenizer {
 
@@ -33,54 +33,240 @@ public class JackTokenizer {
         STRING_CONST
     }
 
-    // 使用集合（Set）来快速查找关键字和符号
-    private static final Set<String> KEYWORDS = new HashSet<>();
-    private static final Set<Character> SYMBOLS = new HashSet<>();
+    /**
+     * 定义Jack语言的全部关键字。关键字在扫描时就确定编号，编译引擎按枚举值分派，不比较字符串。
+     */
+    public enum Keyword {
+        CLASS, CONSTRUCTOR, FUNCTION, METHOD, FIELD, STATIC, VAR,
+        INT, CHAR, BOOLEAN, VOID, TRUE, FALSE, NULL, THIS,
+        LET, DO, IF, ELSE, WHILE, RETURN
+    }
+
+    // 全部关键字，下标即 Keyword 的序号
+    private static final String[] KEYWORDS = {
+        "class", "constructor", "function", "method", "field", "static", "var",
+        "int", "char", "boolean", "void", "true", "false", "null", "this",
+        "let", "do", "if", "else", "while", "return"
+    };
+    private static final char[][] KEYWORD_CHARS = new char[KEYWORDS.length][];
+
+    // 全部符号；SYMBOL_TEXT 按字符保存符号的字符串形式，不是符号的字符为 null
+    private static final String SYMBOLS = "{}()[].,;+-*/&|<>=~";
+    private static final String[] SYMBOL_TEXT = new String[128];
+
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final Keyword[] KEYWORD_VALUES = Keyword.values();
 
-    // 静态初始化块，用于填充关键字和符号集合
     static {
-        KEYWORDS.add("class"); KEYWORDS.add("constructor"); KEYWORDS.add("function");
-        KEYWORDS.add("method"); KEYWORDS.add("field"); KEYWORDS.add("static");
-        KEYWORDS.add("var"); KEYWORDS.add("int"); KEYWORDS.add("char");
-        KEYWORDS.add("boolean"); KEYWORDS.add("void"); KEYWORDS.add("true");
-        KEYWORDS.add("false"); KEYWORDS.add("null"); KEYWORDS.add("this");
-        KEYWORDS.add("let"); KEYWORDS.add("do"); KEYWORDS.add("if");
-        KEYWORDS.add("else"); KEYWORDS.add("while"); KEYWORDS.add("return");
-
-        SYMBOLS.add('{'); SYMBOLS.add('}'); SYMBOLS.add('('); SYMBOLS.add(')');
-        SYMBOLS.add('['); SYMBOLS.add(']'); SYMBOLS.add('.'); SYMBOLS.add(',');
-        SYMBOLS.add(';'); SYMBOLS.add('+'); SYMBOLS.add('-'); SYMBOLS.add('*');
-        SYMBOLS.add('/'); SYMBOLS.add('&'); SYMBOLS.add('|'); SYMBOLS.add('<');
-        SYMBOLS.add('>'); SYMBOLS.add('='); SYMBOLS.add('~');
-    }
-
-    private ArrayList<String> tokens;
+        for (int i = 0; i < KEYWORDS.length; i++) {
+            KEYWORD_CHARS[i] = KEYWORDS[i].toCharArray();
+        }
+        for (int i = 0; i < SYMBOLS.length(); i++) {
+            char c = SYMBOLS.charAt(i);
+            SYMBOL_TEXT[c] = String.valueOf(c);
+        }
+    }
+
+    // 状态机的状态
+    private static final int START = 0;          // 词法单元之间
+    private static final int WORD = 1;           // 标识符或关键字
+    private static final int NUMBER = 2;         // 整数常量
+    private static final int STRING = 3;         // 字符串常量
+    private static final int SLASH = 4;          // 读到 '/'，可能是除号或注释的开始
+    private static final int LINE_COMMENT = 5;   // 行注释 // ...
+    private static final int BLOCK_COMMENT = 6;  // 块注释 /* ... */
+    private static final int BLOCK_STAR = 7;     // 块注释中读到 '*'，可能是注释的结束
+
+    private static final int MAX_INT = 32767;
+
+    private final String fileName;
+    private final char[] source;
+
+    // 第 i 个词法单元：类型为 TokenType 的序号，在 source 中的范围为 [starts[i], ends[i])（字符串常量包含双引号），
+    // values 保存关键字的编号、符号字符或整数常量的值
+    private byte[] types = new byte[1024];
+    private int[] starts = new int[1024];
+    private int[] ends = new int[1024];
+    private int[] lines = new int[1024];
+    private int[] values = new int[1024];
+    private int count;
+
     private int currentTokenIndex;
-    private String currentToken;
 
     /**
-     * 构造函数。打开输入文件，读取内容，移除注释，并将其分解为词法单元列表。
+     * 构造函数。打开输入文件，读取内容，一遍扫描跳过注释并将其分解为词法单元。
      * @param inputFile 输入的 .jack 文件路径。
      * @throws IOException 如果文件读取失败。
+     * @throws IllegalStateException 如果遇到无法识别的字符、未结束的字符串常量或注释、超出范围的整数常量。
      */
     public JackTokenizer(String inputFile) throws IOException {
-        String content = new String(Files.readAllBytes(Paths.get(inputFile)));
-
-        // 1. 移除所有块注释 (/* ... */)
-        content = content.replaceAll("/\\*.*?\\*/", " ");
-        // 2. 移除所有行注释 (// ...)
-        content = content.replaceAll("//.*", "");
-
-        this.tokens = new ArrayList<>();
-        // 3. 使用正则表达式一次性匹配所有类型的词法单元
-        Pattern pattern = Pattern.compile("\"[^\"]*\"|\\w+|[{}()\\[\\].,;+\\-*/&|<>=~]");
-        Matcher matcher = pattern.matcher(content);
-        while (matcher.find()) {
-            this.tokens.add(matcher.group());
+        this.fileName = new File(inputFile).getName();
+        this.source = new String(Files.readAllBytes(Paths.get(inputFile)), StandardCharsets.UTF_8).toCharArray();
+        scan();
+        this.currentTokenIndex = -1;
+    }
+
+    // 按字符转移状态；每个状态读到不属于自己的字符时结束当前词法单元，并在 START 状态重新处理该字符
+    private void scan() {
+        int state = START;
+        int start = 0;
+        int startLine = 1;
+        int line = 1;
+        int value = 0;
+        int i = 0;
+        while (i <= source.length) {
+            // 用 0 作为文件末尾的哨兵字符，使所有未结束的词法单元都能在循环中结束
+            char c = i < source.length ? source[i] : 0;
+            switch (state) {
+                case START:
+                    start = i;
+                    startLine = line;
+                    if (c == 0 && i == source.length) {
+                        i++;
+                    } else if (isLetter(c)) {
+                        state = WORD;
+                        i++;
+                    } else if (c >= '0' && c <= '9') {
+                        state = NUMBER;
+                        value = c - '0';
+                        i++;
+                    } else if (c == '"') {
+                        state = STRING;
+                        i++;
+                    } else if (c == '/') {
+                        state = SLASH;
+                        i++;
+                    } else if (c < 128 && SYMBOL_TEXT[c] != null) {
+                        add(TokenType.SYMBOL, i, i + 1, line, c);
+                        i++;
+                    } else if (c <= ' ') {
+                        if (c == '\n') {
+                            line++;
+                        }
+                        i++;
+                    } else {
+                        throw error(line, "无法识别的字符 '" + c + "'");
+                    }
+                    break;
+                case WORD:
+                    if (isLetter(c) || c >= '0' && c <= '9') {
+                        i++;
+                    } else {
+                        int keyword = keywordAt(start, i);
+                        if (keyword >= 0) {
+                            add(TokenType.KEYWORD, start, i, startLine, keyword);
+                        } else {
+                            add(TokenType.IDENTIFIER, start, i, startLine, 0);
+                        }
+                        state = START;
+                    }
+                    break;
+                case NUMBER:
+                    if (c >= '0' && c <= '9') {
+                        value = value * 10 + (c - '0');
+                        if (value > MAX_INT) {
+                            throw error(line, "整数常量超出范围 0..32767");
+                        }
+                        i++;
+                    } else {
+                        add(TokenType.INT_CONST, start, i, startLine, value);
+                        state = START;
+                    }
+                    break;
+                case STRING:
+                    if (c == '"') {
+                        i++;
+                        add(TokenType.STRING_CONST, start, i, startLine, 0);
+                        state = START;
+                    } else if (c == '\n' || i == source.length) {
+                        throw error(startLine, "字符串常量没有结束");
+                    } else {
+                        i++;
+                    }
+                    break;
+                case SLASH:
+                    if (c == '/') {
+                        state = LINE_COMMENT;
+                        i++;
+                    } else if (c == '*') {
+                        state = BLOCK_COMMENT;
+                        i++;
+                    } else {
+                        add(TokenType.SYMBOL, start, i, startLine, '/');
+                        state = START;
+                    }
+                    break;
+                case LINE_COMMENT:
+                    if (c == '\n' || i == source.length) {
+                        state = START;
+                    } else {
+                        i++;
+                    }
+                    break;
+                case BLOCK_COMMENT:
+                case BLOCK_STAR:
+                    if (i == source.length) {
+                        throw error(startLine, "注释没有结束");
+                    }
+                    if (c == '/' && state == BLOCK_STAR) {
+                        state = START;
+                    } else {
+                        state = c == '*' ? BLOCK_STAR : BLOCK_COMMENT;
+                        if (c == '\n') {
+                            line++;
+                        }
+                    }
+                    i++;
+                    break;
+                default:
+                    throw new AssertionError(state);
+            }
         }
+    }
 
-        this.currentTokenIndex = -1;
-        this.currentToken = null;
+    private static boolean isLetter(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_';
+    }
+
+    // 辅助方法：source[start, end) 是关键字时返回它的编号，否则返回 -1
+    private int keywordAt(int start, int end) {
+        int length = end - start;
+        for (int k = 0; k < KEYWORD_CHARS.length; k++) {
+            char[] keyword = KEYWORD_CHARS[k];
+            if (keyword.length != length) {
+                continue;
+            }
+            int j = 0;
+            while (j < length && keyword[j] == source[start + j]) {
+                j++;
+            }
+            if (j == length) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    // 辅助方法：追加一个词法单元，数组不够时加倍
+    private void add(TokenType type, int start, int end, int line, int value) {
+        if (count == types.length) {
+            int capacity = count * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        types[count] = (byte) type.ordinal();
+        starts[count] = start;
+        ends[count] = end;
+        lines[count] = line;
+        values[count] = value;
+        count++;
+    }
+
+    private IllegalStateException error(int line, String message) {
+        return new IllegalStateException(fileName + ":" + line + ": " + message);
     }
 
     /**
@@ -88,7 +274,7 @@ public class JackTokenizer {
      * @return 如果有更多词法单元则返回true，否则返回false。
      */
     public boolean hasMoreTokens() {
-        return currentTokenIndex < tokens.size() - 1;
+        return currentTokenIndex < count - 1;
     }
 
     /**
@@ -96,11 +282,8 @@ public class JackTokenizer {
      * 这个方法应该只在 hasMoreTokens() 为 true 时调用。
      */
     public void advance() {
-        if (hasMoreTokens()) {
+        if (currentTokenIndex < count) {
             currentTokenIndex++;
-            currentToken = tokens.get(currentTokenIndex);
-        } else {
-            currentToken = null;
         }
     }
 
@@ -109,48 +292,56 @@ public class JackTokenizer {
      * @return 当前词法单元的TokenType枚举值。
      */
     public TokenType tokenType() {
-        if (KEYWORDS.contains(currentToken)) {
-            return TokenType.KEYWORD;
-        }
-        if (currentToken.length() == 1 && SYMBOLS.contains(currentToken.charAt(0))) {
-            return TokenType.SYMBOL;
-        }
-        if (currentToken.matches("\\d+")) {
-            return TokenType.INT_CONST;
+        if (currentTokenIndex < 0 || currentTokenIndex >= count) {
+            throw new IllegalStateException("无法识别的词法单元: null");
         }
-        if (currentToken.startsWith("\"") && currentToken.endsWith("\"")) {
-            return TokenType.STRING_CONST;
-        }
-        if (currentToken.matches("^[a-zA-Z_][a-zA-Z0-9_]*$")) {
-            return TokenType.IDENTIFIER;
-        }
-        throw new IllegalStateException("无法识别的词法单元: " + currentToken);
+        return TYPES[types[currentTokenIndex]];
     }
 
     /**
-     * @return 返回当前关键字。仅当 tokenType() 是 KEYWORD 时调用。
+     * @return 返回当前关键字；当前词法单元不是关键字时返回 null。
      */
-    public String keyword() { return currentToken; }
+    public Keyword keyword() {
+        if (tokenType() == TokenType.KEYWORD) {
+            return KEYWORD_VALUES[values[currentTokenIndex]];
+        }
+        return null;
+    }
 
     /**
      * @return 返回当前符号。仅当 tokenType() 是 SYMBOL 时调用。
      */
-    public char symbol() { return currentToken.charAt(0); }
+    public char symbol() {
+        if (tokenType() == TokenType.SYMBOL) {
+            return (char) values[currentTokenIndex];
+        }
+        return source[starts[currentTokenIndex]];
+    }
 
     /**
      * @return 返回当前标识符。仅当 tokenType() 是 IDENTIFIER 时调用。
      */
-    public String identifier() { return currentToken; }
+    public String identifier() { return getCurrentToken(); }
 
     /**
      * @return 返回当前整数常量的值。仅当 tokenType() 是 INT_CONST 时调用。
      */
-    public int intVal() { return Integer.parseInt(currentToken); }
+    public int intVal() { return values[currentTokenIndex]; }
 
     /**
      * @return 返回当前字符串常量的值（不含双引号）。仅当 tokenType() 是 STRING_CONST 时调用。
      */
-    public String stringVal() { return currentToken.substring(1, currentToken.length() - 1); }
+    public String stringVal() {
+        int start = starts[currentTokenIndex];
+        return new String(source, start + 1, ends[currentTokenIndex] - start - 2);
+    }
+
+    /**
+     * @return 当前词法单元在源文件中的行号（从 1 开始）。
+     */
+    public int lineNumber() {
+        return currentTokenIndex >= 0 && currentTokenIndex < count ? lines[currentTokenIndex] : 0;
+    }
 
     /**
      * （辅助方法）获取下一个词法单元用于向前看（lookahead），但不消耗它。
@@ -158,15 +349,42 @@ public class JackTokenizer {
      */
     public String peek() {
         if (hasMoreTokens()) {
-            return tokens.get(currentTokenIndex + 1);
+            return text(currentTokenIndex + 1);
         }
         return null;
     }
 
+    /**
+     * （辅助方法）向前看下一个词法单元是否为符号，不创建字符串。
+     * @return 下一个词法单元是符号时返回该符号，否则返回 0。
+     */
+    public char peekSymbol() {
+        int next = currentTokenIndex + 1;
+        if (next < count && TYPES[types[next]] == TokenType.SYMBOL) {
+            return (char) values[next];
+        }
+        return 0;
+    }
+
     /**
      * (辅助方法) 获取当前词法单元的原始字符串。
      */
     public String getCurrentToken() {
-        return currentToken;
+        if (currentTokenIndex < 0 || currentTokenIndex >= count) {
+            return null;
+        }
+        return text(currentTokenIndex);
+    }
+
+    // 辅助方法：第 i 个词法单元的原始字符串，关键字和符号使用常量表中的字符串
+    private String text(int i) {
+        switch (TYPES[types[i]]) {
+            case KEYWORD:
+                return KEYWORDS[values[i]];
+            case SYMBOL:
+                return SYMBOL_TEXT[values[i]];
+            default:
+                return new String(source, starts[i], ends[i] - starts[i]);
+        }
     }
-}
\ No newline at end of file
+}
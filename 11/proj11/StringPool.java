@@ -0,0 +1,78 @@
+package proj11;
+
+// StringPool.java
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 字符串常量池。
+ * 同一个类中内容相同的字符串常量共用一个静态变量，编号排在类自己声明的静态变量之后。
+ * 第一次求值时静态变量为 0，才用 String.new 和 String.appendChar 创建字符串并保存；
+ * 以后每次求值只把静态变量压栈，不再分配内存、逐个追加字符。
+ * 池中的字符串是共享的：程序修改或释放字符串常量时，行为与每次新建字符串不同。
+ * 所有类的静态变量共用 RAM 16-255，因此每个类至多放入 MAX_STRINGS 个字符串，其余的字符串常量仍然每次新建。
+ */
+public class StringPool {
+    // 每个类放入常量池的字符串数上限
+    public static final int MAX_STRINGS = 16;
+    // 一个类的静态变量（含常量池）超过此数时由 JackAnalyzer 发出警告；所有类一共只有 240 个
+    public static final int STATIC_WARNING = 32;
+
+    private VMWriter vmWriter;
+    private final int firstStatic;
+    // 字符串常量 -> 保存它的静态变量的编号
+    private final Map<String, Integer> statics = new HashMap<>();
+
+    /**
+     * @param vmWriter VM写入器
+     * @param firstStatic 第一个可用的静态变量编号，即类中声明的静态变量个数
+     */
+    public StringPool(VMWriter vmWriter, int firstStatic) {
+        this.vmWriter = vmWriter;
+        this.firstStatic = firstStatic;
+    }
+
+    /**
+     * 写入把字符串常量压栈的代码：第一次求值时创建字符串。常量池已满时改为每次新建字符串。
+     * @param value 字符串常量（不含双引号）
+     * @param label 本处代码使用的唯一标签
+     */
+    public void writePush(String value, String label) {
+        Integer index = statics.get(value);
+        if (index == null) {
+            if (statics.size() == MAX_STRINGS) {
+                writeNew(vmWriter, value);
+                return;
+            }
+            index = firstStatic + statics.size();
+            statics.put(value, index);
+        }
+        vmWriter.writePush(VMWriter.Segment.STATIC, index);
+        vmWriter.writeIf(label); // 已经创建
+        writeNew(vmWriter, value);
+        vmWriter.writePop(VMWriter.Segment.STATIC, index);
+        vmWriter.writeLabel(label);
+        vmWriter.writePush(VMWriter.Segment.STATIC, index);
+    }
+
+    /**
+     * @return 类的静态变量总数：类中声明的静态变量加上常量池占用的静态变量
+     */
+    public int staticCount() {
+        return firstStatic + statics.size();
+    }
+
+    /**
+     * 写入新建字符串的代码：String.new，再逐个 String.appendChar。
+     * @param vmWriter VM写入器
+     * @param value 字符串常量（不含双引号）
+     */
+    public static void writeNew(VMWriter vmWriter, String value) {
+        vmWriter.writePush(VMWriter.Segment.CONST, value.length());
+        vmWriter.writeCall("String.new", 1);
+        for (char c : value.toCharArray()) {
+            vmWriter.writePush(VMWriter.Segment.CONST, c);
+            vmWriter.writeCall("String.appendChar", 2);
+        }
+    }
+}